@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a large controller result map to a template.  The template declares every key as a formal argument, as a real
+ * template would; adding attributes to a template without formal arguments measures ST's argument growth instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ApplyResultsBenchmark
+{
+    @Param({"100", "10000"})
+    private int attributes;
+
+    private File directory;
+    private TemplateGroup group;
+    private Controller controller;
+    private Map<String, Object> results;
+
+    @Setup(Level.Trial)
+    public void createResults() throws IOException
+    {
+        this.directory = Fixtures.createDirectory("results");
+        this.results = new HashMap<String, Object>(this.attributes * 2);
+        List<String> arguments = new ArrayList<String>(this.attributes);
+        for(int i = 0; i < this.attributes; i++)
+        {
+            String key = "k" + i;
+            arguments.add(key);
+            this.results.put(key, i);
+        }
+
+        StringBuilder template = new StringBuilder("attributes(");
+        for(int i = 0; i < arguments.size(); i++)
+        {
+            template.append(0 == i ? "" : ", ").append(arguments.get(i));
+        }
+        template.append(") ::= <<\n<k0>\n>>\n");
+        Fixtures.write(new File(this.directory, "attributes.st"), template.toString());
+        this.group = new TemplateGroup(this.directory, "UTF-8");
+
+        this.controller = new Controller();
+        Fixtures.configure(this.controller, "className", "fixture.controller.BenchmarkController");
+        Fixtures.configure(this.controller, "method", "getAttributes");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteResults() throws IOException
+    {
+        Fixtures.delete(this.directory);
+    }
+
+    @Benchmark
+    public int applyResults() throws MojoExecutionException
+    {
+        ST st = this.group.getInstanceOf("attributes", new ErrorBuffer(), null);
+        return this.controller.applyResults(st, this.results);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the controller classpath, builds its class loader and loads a controller from it.  The controller is
+ * compiled into the project's output directory, which the class loader searches before the dependency jars.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ControllerClasspathBenchmark
+{
+    private static final String CONTROLLER = "fixture.controller.BenchmarkController";
+
+    @Param({"10", "100"})
+    private int dependencies;
+
+    private File directory;
+    private MavenProject project;
+    private List<File> jars;
+    private Controller controller;
+
+    @Setup(Level.Trial)
+    public void createProject() throws IOException
+    {
+        this.directory = Fixtures.createDirectory("classpath");
+        this.project = Fixtures.createProject(this.directory);
+        Fixtures.compileController(new File(this.project.getBuild().getOutputDirectory()), CONTROLLER, "getAttributes");
+
+        this.jars = new ArrayList<File>(this.dependencies);
+        for(int i = 0; i < this.dependencies; i++)
+        {
+            this.jars.add(Fixtures.writeJar(new File(this.directory, String.format("repository/dependency%d.jar", i)), 20));
+        }
+
+        this.controller = new Controller();
+        Fixtures.configure(this.controller, "className", CONTROLLER);
+        Fixtures.configure(this.controller, "method", "getAttributes");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProject() throws IOException
+    {
+        Fixtures.delete(this.directory);
+    }
+
+    @Benchmark
+    public boolean loadController() throws MojoExecutionException, IOException
+    {
+        ControllerClasspath classpath = new ControllerClasspath(this.project, null, Fixtures.createResolver(this.jars));
+        try
+        {
+            boolean loadable = this.controller.isLoadable(classpath, new Timings("controller", CONTROLLER));
+            if(!loadable)
+            {
+                throw new IllegalStateException(String.format("The class %s was not found.", CONTROLLER));
+            }
+            return loadable;
+        }
+        finally
+        {
+            classpath.close();
+        }
+    }
+}
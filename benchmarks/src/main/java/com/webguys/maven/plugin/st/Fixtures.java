@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.ProjectDependenciesResolver;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Creates the synthetic files and objects the benchmarks run against.  Nothing is read from outside the temporary
+ * directory, so the results only depend on the plugin and the machine.
+ */
+public final class Fixtures
+{
+    private Fixtures()
+    {
+    }
+
+    public static File createDirectory(String prefix) throws IOException
+    {
+        return Files.createTempDirectory("st-benchmark-" + prefix).toFile();
+    }
+
+    public static void delete(File directory) throws IOException
+    {
+        if(null == directory || !directory.exists())
+        {
+            return;
+        }
+
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+            {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException
+            {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public static File write(File file, String content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try
+        {
+            writer.write(content);
+        }
+        finally
+        {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Writes a jar that only contains a manifest and a few resources, to stand in for a dependency.
+     */
+    public static File writeJar(File file, int resources) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(file), manifest);
+        try
+        {
+            for(int i = 0; i < resources; i++)
+            {
+                output.putNextEntry(new ZipEntry(String.format("fixture/%s/resource%d.txt", file.getName(), i)));
+                output.write(String.valueOf(i).getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        return file;
+    }
+
+    /**
+     * Compiles a controller with a single method that returns an empty map into the given directory.
+     */
+    public static void compileController(File directory, String className, String method) throws IOException
+    {
+        int index = className.lastIndexOf('.');
+        String packageName = className.substring(0, index);
+        String simpleName = className.substring(index + 1);
+        File source = write(new File(directory, className.replace('.', File.separatorChar) + ".java"), String.format(
+            "package %s;%n%npublic class %s%n{%n    public static java.util.Map<String, Object> %s()%n    {%n        return new java.util.HashMap<String, Object>();%n    }%n}%n",
+            packageName, simpleName, method));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if(null == compiler)
+        {
+            throw new IllegalStateException("The benchmarks must be run with a JDK, not a JRE.");
+        }
+        if(0 != compiler.run(null, null, null, "-d", directory.getAbsolutePath(), source.getAbsolutePath()))
+        {
+            throw new IllegalStateException(String.format("Unable to compile %s", source));
+        }
+    }
+
+    /**
+     * Sets a field that Maven would otherwise inject from the plugin configuration.
+     */
+    public static <T> T configure(T target, String name, Object value)
+    {
+        try
+        {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+            return target;
+        }
+        catch(Exception e)
+        {
+            throw new IllegalStateException(String.format("Unable to set %s.%s", target.getClass().getName(), name), e);
+        }
+    }
+
+    public static MavenProject createProject(File baseDirectory)
+    {
+        MavenProject project = new MavenProject();
+        project.setFile(new File(baseDirectory, "pom.xml"));
+        Build build = new Build();
+        build.setDirectory(new File(baseDirectory, "target").getAbsolutePath());
+        build.setOutputDirectory(new File(baseDirectory, "target/classes").getAbsolutePath());
+        project.setBuild(build);
+        return project;
+    }
+
+    /**
+     * A dependency resolver that returns the given jars as the runtime dependencies of the project.
+     */
+    public static ProjectDependenciesResolver createResolver(final List<File> jars)
+    {
+        return new ProjectDependenciesResolver()
+        {
+            public Set<Artifact> resolve(MavenProject project, Collection<String> scopesToResolve, MavenSession session)
+            {
+                Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+                for(File jar : jars)
+                {
+                    String name = jar.getName().replace(".jar", "");
+                    Artifact artifact = new DefaultArtifact("fixture", name, "1.0", Artifact.SCOPE_RUNTIME, "jar", null, new DefaultArtifactHandler("jar"));
+                    artifact.setFile(jar);
+                    artifacts.add(artifact);
+                }
+                return artifacts;
+            }
+
+            public Set<Artifact> resolve(MavenProject project, Collection<String> scopesToCollect, Collection<String> scopesToResolve, MavenSession session)
+            {
+                return this.resolve(project, scopesToResolve, session);
+            }
+
+            public Set<Artifact> resolve(MavenProject project, Collection<String> scopesToCollect, Collection<String> scopesToResolve, MavenSession session, Set<Artifact> ignoreableArtifacts)
+            {
+                return this.resolve(project, scopesToResolve, session);
+            }
+
+            public Set<Artifact> resolve(Collection<? extends MavenProject> projects, Collection<String> scopes, MavenSession session)
+            {
+                return this.resolve(projects.iterator().next(), scopes, session);
+            }
+        };
+    }
+}
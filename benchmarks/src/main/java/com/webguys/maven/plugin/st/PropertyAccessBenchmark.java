@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+import org.stringtemplate.v4.misc.ErrorManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a template that reads several properties of every object in a large list, with ST's reflective adaptor and
+ * with the {@link AccessorModelAdaptor}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx1g"})
+public class PropertyAccessBenchmark
+{
+    public static class Member
+    {
+        public final String kind;
+        private final String name;
+        private final int power;
+
+        private Member(String name, int power)
+        {
+            this.kind = "lion";
+            this.name = name;
+            this.power = power;
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+
+        public int getPower()
+        {
+            return this.power;
+        }
+
+        public boolean isActive()
+        {
+            return 0 == this.power % 2;
+        }
+    }
+
+    @Param({"10000", "100000", "1000000"})
+    private int elements;
+
+    @Param({"true", "false"})
+    private boolean accessorAdaptor;
+
+    private File directory;
+    private TemplateGroup group;
+    private List<Member> members;
+
+    @Setup(Level.Trial)
+    public void createModel() throws IOException, MojoExecutionException
+    {
+        this.directory = Fixtures.createDirectory("properties");
+        File templates = new File(this.directory, "templates");
+        Fixtures.write(new File(templates, "members.st"),
+            "members(members) ::= <<\n" +
+            "<members:{each | <each.name> <each.kind> <each.power> <if(each.active)>active<endif>\n}>\n" +
+            ">>\n");
+        this.group = new TemplateGroup(templates, "UTF-8");
+        new GroupConfiguration(this.accessorAdaptor, null, null, null).apply(this.group);
+
+        this.members = new ArrayList<Member>(this.elements);
+        for(int i = 0; i < this.elements; i++)
+        {
+            this.members.add(new Member("member" + i, i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteModel() throws IOException
+    {
+        Fixtures.delete(this.directory);
+    }
+
+    @Benchmark
+    public int render()
+    {
+        ST st = this.group.getInstanceOf("members", new ErrorBuffer(), null);
+        st.add("members", this.members);
+        StringWriter output = new StringWriter(this.elements * 32);
+        new StreamingInterpreter(st.groupThatCreatedThisInstance, new ErrorManager(new ErrorBuffer())).exec(new AutoIndentWriter(output), st);
+        return output.getBuffer().length();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+import org.stringtemplate.v4.misc.ErrorManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a template that iterates over a large list, both through {@link Template#render} and into memory, so that
+ * the cost of writing the output can be told apart from the cost of interpreting the template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx1g"})
+public class RenderBenchmark
+{
+    @Param({"10000", "100000", "1000000"})
+    private int elements;
+
+    private File directory;
+    private TemplateGroup group;
+    private Template template;
+    private List<String> members;
+    private File outputFile;
+
+    @Setup(Level.Trial)
+    public void createModel() throws IOException
+    {
+        this.directory = Fixtures.createDirectory("render");
+        File templates = new File(this.directory, "templates");
+        Fixtures.write(new File(templates, "members.st"),
+            "members(robot, members) ::= <<\n" +
+            "public class <robot>\n" +
+            "{\n" +
+            "    <members:{each | private <robot> <each>;\n}>\n" +
+            "}\n" +
+            ">>\n");
+        this.group = new TemplateGroup(templates, "UTF-8");
+        this.template = new Template();
+        Fixtures.configure(this.template, "directory", templates);
+        Fixtures.configure(this.template, "name", "members");
+
+        this.members = new ArrayList<String>(this.elements);
+        for(int i = 0; i < this.elements; i++)
+        {
+            this.members.add("member" + i);
+        }
+        this.outputFile = new File(this.directory, "output/Members.java");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteModel() throws IOException
+    {
+        Fixtures.delete(this.directory);
+    }
+
+    private ST createInstance()
+    {
+        ST st = this.group.getInstanceOf("members", new ErrorBuffer(), null);
+        st.add("robot", "Lion");
+        st.add("members", this.members);
+        return st;
+    }
+
+    @Benchmark
+    public boolean renderToFile() throws MojoExecutionException
+    {
+        // delete the previous output so that every iteration writes the file
+        this.outputFile.delete();
+        Timings timings = new Timings("members", this.outputFile.getPath());
+        return this.template.render(this.createInstance(), this.outputFile, Charset.forName("UTF-8"), new SystemStreamLog(), timings);
+    }
+
+    @Benchmark
+    public int renderToMemory()
+    {
+        ST st = this.createInstance();
+        StringWriter output = new StringWriter(this.elements * 32);
+        ErrorBuffer listener = new ErrorBuffer();
+        new StreamingInterpreter(st.groupThatCreatedThisInstance, new ErrorManager(listener)).exec(new AutoIndentWriter(output), st);
+        return output.getBuffer().length();
+    }
+}
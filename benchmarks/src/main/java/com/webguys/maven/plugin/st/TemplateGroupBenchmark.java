@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads every template in a large template directory, the way the first render of a build does, either compiling them
+ * or reading them from a template cache filled during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TemplateGroupBenchmark
+{
+    @Param({"100", "1000"})
+    private int templates;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private File directory;
+    private TemplateCache cache;
+
+    @Setup(Level.Trial)
+    public void createTemplates() throws IOException
+    {
+        this.directory = Fixtures.createDirectory("group");
+        for(int i = 0; i < this.templates; i++)
+        {
+            Fixtures.write(new File(this.directory, String.format("template%d.st", i)), String.format(
+                "template%d(name, members) ::= <<%n" +
+                "public class <name>%n" +
+                "{%n" +
+                "    <members:{each | private <each.type> <each.name>;}; separator=\"\\n\">%n" +
+                "    <if(members)><members:member%d()><endif>%n" +
+                "}%n" +
+                ">>%n", i, i));
+            Fixtures.write(new File(this.directory, String.format("member%d.st", i)), String.format(
+                "member%d(m) ::= <<%n" +
+                "public <m.type> get<m.name>() { return this.<m.name>; }%n" +
+                ">>%n", i));
+        }
+
+        if(this.cached)
+        {
+            this.cache = new TemplateCache(new File(this.directory.getParentFile(), this.directory.getName() + "-cache"), new SystemStreamLog());
+            this.loadGroup();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTemplates() throws IOException
+    {
+        Fixtures.delete(this.directory);
+        Fixtures.delete(new File(this.directory.getParentFile(), this.directory.getName() + "-cache"));
+    }
+
+    @Benchmark
+    public int loadGroup()
+    {
+        TemplateGroup group = new TemplateGroup(this.directory, "UTF-8");
+        ErrorBuffer errors = new ErrorBuffer();
+        int loaded = 0;
+        for(int i = 0; i < this.templates; i++)
+        {
+            ST st = group.getInstanceOf(String.format("template%d", i), errors, this.cache);
+            if(null != st)
+            {
+                loaded++;
+            }
+        }
+        if(!errors.errors.isEmpty())
+        {
+            throw new IllegalStateException(errors.toString());
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,22 @@
+package it;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Crew
+{
+    private String module;
+
+    public void setProperties(Map<String, String> properties)
+    {
+        this.module = properties.get("module");
+    }
+
+    public Map<String, Object> getMembers()
+    {
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("members", Arrays.asList("Keith", "Lance", "Pidge", "Hunk", "Allura", this.module));
+        return result;
+    }
+}
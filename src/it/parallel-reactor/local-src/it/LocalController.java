@@ -0,0 +1,15 @@
+package it;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Compiled by the plugin, with the compiler plugin, before the module's compile phase.
+ */
+public class LocalController
+{
+    public Map<String, Object> getGreeting()
+    {
+        return Collections.<String, Object>singletonMap("greeting", "compiled during generate-sources");
+    }
+}
@@ -0,0 +1,18 @@
+def log = new File(basedir, 'build.log').text
+assert !log.contains('@threadSafe') : 'the render goal is not thread-safe'
+
+(1..8).each { i ->
+    def module = new File(basedir, "module-$i")
+    ['Crew', 'Roster', 'Summary'].each { name ->
+        def source = new File(module, "target/generated-sources/string-template/com/example/${name}.java")
+        assert source.isFile() : "$source was not rendered"
+        assert source.text.contains("MODULE = \"module-$i\"")
+        assert source.text.contains('"Keith", "Lance", "Pidge", "Hunk", "Allura", "module-' + i + '"')
+        assert new File(module, "target/classes/com/example/${name}.class").isFile() : "$source was not compiled"
+    }
+
+    def greeting = new File(module, 'target/greeting.txt')
+    assert greeting.text.trim() == "module-$i: compiled during generate-sources"
+}
+
+return true
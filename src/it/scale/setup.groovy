@@ -0,0 +1,105 @@
+/*
+ * Generates the template files, controllers and template configurations of a large project, sized by scale.properties.
+ */
+def scale = new Properties()
+new File(basedir, 'scale.properties').withInputStream { scale.load(it) }
+int templates = scale.templates as int
+int directories = scale.directories as int
+int controllers = scale.controllers as int
+
+def set = new File(basedir, 'templates/set')
+(0..<templates).each { i ->
+    def directory = new File(set, "group${i % directories}")
+    directory.mkdirs()
+    new File(directory, "Template${i}.st").text = """Template${i}(project) ::= <<
+// <project> template ${i}
+<["alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta"]:{word | <word> <i> of ${i}
+}>
+>>
+"""
+}
+
+def sources = new File(basedir, 'src/main/java/it')
+sources.mkdirs()
+new File(sources, 'Member.java').text = '''package it;
+
+public class Member
+{
+    private final int index;
+
+    public Member(int index)
+    {
+        this.index = index;
+    }
+
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    public String getName()
+    {
+        return "member" + this.index;
+    }
+
+    public boolean isActive()
+    {
+        return 0 == this.index % 3;
+    }
+
+    public double getWeight()
+    {
+        return this.index * 1.5;
+    }
+}
+'''
+def controller = { String name, int members ->
+    new File(sources, "${name}.java").text = """package it;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ${name}
+{
+    public Map<String, Object> getModel()
+    {
+        List<Member> members = new ArrayList<Member>();
+        for(int i = 0; i < ${members}; i++)
+        {
+            members.add(new Member(i));
+        }
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("members", members);
+        return result;
+    }
+}
+"""
+}
+(0..<controllers).each { i -> controller("Controller${i}", scale.members as int) }
+controller('LargeController', scale.largeMembers as int)
+
+def configuration = new StringBuilder()
+(0..<controllers).each { i ->
+    configuration << """
+                    <template>
+                        <directory>\${project.basedir}/templates/model</directory>
+                        <name>model</name>
+                        <target>\${project.build.directory}/model/model${i}.csv</target>
+                        <controller>
+                            <className>it.Controller${i}</className>
+                            <method>getModel</method>
+                            <sourceVersion>1.8</sourceVersion>
+                            <targetVersion>1.8</targetVersion>
+                        </controller>
+                        <properties>
+                            <controller>Controller${i}</controller>
+                        </properties>
+                    </template>"""
+}
+def pom = new File(basedir, 'pom.xml')
+pom.text = pom.text.replace('<!-- the templates of the controllers are added by setup.groovy -->', configuration.toString().trim())
+
+return true
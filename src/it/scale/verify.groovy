@@ -0,0 +1,75 @@
+/*
+ * Checks the outputs of the scale project, holds each render to the budgets of scale.properties and appends the
+ * measurements to the results file, so the runs of different versions can be compared.
+ */
+def scale = new Properties()
+new File(basedir, 'scale.properties').withInputStream { scale.load(it) }
+int templates = scale.templates as int
+int controllers = scale.controllers as int
+
+def set = new File(basedir, 'target/set')
+def rendered = 0
+set.eachFileRecurse { if (it.name.endsWith('.txt')) rendered++ }
+assert rendered == templates : "$rendered of $templates set templates were rendered"
+(0..<controllers).each { i ->
+    def model = new File(basedir, "target/model/model${i}.csv")
+    assert model.isFile() : "$model was not rendered"
+    assert model.text.startsWith("# Controller${i}")
+}
+def large = new File(basedir, 'target/large.txt')
+assert large.length() > 1024 * 1024 : "$large is only ${large.length()} bytes"
+
+def log = new File(basedir, 'build.log').text
+assert !log.contains('OutOfMemoryError') : 'a render ran out of memory'
+
+def seconds = { String value ->
+    def minutes = value =~ /(\d+):(\d+(?:\.\d+)?) ?(?:s|min)/
+    if (minutes.matches()) {
+        return (minutes[0][1] as int) * 60 + (minutes[0][2] as double)
+    }
+    return (value =~ /(\d+(?:\.\d+)?)/)[0][1] as double
+}
+def times = (log =~ /Total time: ?([^\r\n]+)/).collect { seconds(it[1].trim()) }
+assert times.size() == 2 : "expected two renders in the build log, found ${times.size()}"
+
+// the peak heap of each render is the most the garbage collector found in use before a collection, as logged by
+// -verbose:gc in either the "65536K->1024K(251392K)" or the "64M->1M(245M)" form, or in use at the end of the build;
+// each build starts by scanning for projects
+def megabytes = { String amount, String unit ->
+    ((amount as long) * ['K': 1, 'M': 1024, 'G': 1024 * 1024][unit]).intdiv(1024)
+}
+def memories = log.split(/Scanning for projects/).drop(1).collect { run ->
+    def used = (run =~ /(\d+)([KMG])->\d+[KMG]\(\d+[KMG]\)/).collect { megabytes(it[1], it[2]) }
+    used += (run =~ /Final Memory: (\d+)M\/\d+M/).collect { it[1] as long }
+    used ? used.max() as long : null
+}
+
+double timeBudget = scale.timeBudget as double
+int memoryBudget = scale.memoryBudget as int
+def bytes = 0L
+def target = new File(basedir, 'target')
+target.eachFileRecurse { if (it.isFile()) bytes += it.length() }
+
+// the results are kept beside the cloned project unless -Dit.scaleResults names a file that outlives the build
+def results = new File(System.getProperty('it.scaleResults') ?: new File(basedir.parentFile, 'scale-results.csv').path)
+results.parentFile.mkdirs()
+if (!results.exists()) {
+    results << 'timestamp,run,templates,directories,controllers,members,largeMembers,outputBytes,seconds,memoryMB\n'
+}
+def timestamp = new Date().format("yyyy-MM-dd'T'HH:mm:ss")
+times.eachWithIndex { time, run ->
+    def memory = run < memories.size() ? memories[run] : ''
+    results << "$timestamp,${run + 1},$templates,${scale.directories},$controllers,${scale.members},${scale.largeMembers},$bytes,$time,$memory\n"
+    println "Render ${run + 1}: ${time}s, ${memory ?: '?'}MB"
+}
+
+times.eachWithIndex { time, run ->
+    assert time <= timeBudget : "render ${run + 1} took ${time}s, over the budget of ${timeBudget}s"
+}
+assert memories.size() == times.size() : "expected ${times.size()} builds in the log, found ${memories.size()}"
+memories.eachWithIndex { memory, run ->
+    assert null != memory : "the heap used by render ${run + 1} was not logged"
+    assert memory <= memoryBudget : "render ${run + 1} used ${memory}MB, over the budget of ${memoryBudget}MB"
+}
+
+return true
@@ -0,0 +1,1801 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * Created: 11/20/11 10:47 PM
+ */
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.ProjectDependenciesResolver;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.BuildPluginManager;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.stream.BaseStream;
+
+import static org.twdata.maven.mojoexecutor.MojoExecutor.executionEnvironment;
+
+/**
+ * The configuration and rendering shared by the goals of the plugin.  The class path, controller results and template
+ * groups live as long as the mojo, so a goal that renders more than once keeps them warm between renders.
+ */
+public abstract class AbstractStringTemplateMojo extends AbstractMojo
+{
+    private static final SharedCache<TemplateGroup> SHARED_GROUPS = new SharedCache<TemplateGroup>("Shared template groups");
+
+    private static final SharedCache<URLClassLoader> SHARED_CLASS_LOADERS = new SharedCache<URLClassLoader>("Shared controller class loaders");
+
+    /**
+     * A template whose controller has been invoked, waiting to be rendered.
+     */
+    private static class PreparedTemplate
+    {
+        private final Template template;
+        private final File outputFile;
+        private final String fingerprint;
+        private final TemplateGroup group;
+        private final ST st;
+        private final Object results;
+        private final Map<String, Object> data;
+        private final String cacheInputs;
+        private final Timings timings;
+
+        private PreparedTemplate(Template template, File outputFile, String fingerprint, TemplateGroup group, ST st, Object results, Map<String, Object> data,
+            String cacheInputs, Timings timings)
+        {
+            this.template = template;
+            this.outputFile = outputFile;
+            this.fingerprint = fingerprint;
+            this.group = group;
+            this.st = st;
+            this.results = results;
+            this.data = data;
+            this.cacheInputs = cacheInputs;
+            this.timings = timings;
+        }
+    }
+
+    /**
+     * The Maven Project Object
+     *
+     * @parameter property="project"
+     * @required
+     * @readonly
+     */
+    protected MavenProject project;
+
+    /**
+     * The Maven Session Object
+     *
+     * @parameter property="session"
+     * @required
+     * @readonly
+     */
+    private MavenSession session;
+
+    /**
+     * The Maven PluginManager Object
+     *
+     * @component
+     * @required
+     */
+    private BuildPluginManager pluginManager;
+
+    /**
+     * The Maven ProjectDependenciesResolver Object
+     *
+     * @component
+     * @required
+     */
+    private ProjectDependenciesResolver dependenciesResolver;
+
+    /**
+     * The collection of templates to render.
+     * @parameter
+     */
+    private List<Template> templates;
+
+    /**
+     * Directories whose template files are all rendered, each to the same relative path in an output directory.
+     *
+     * @parameter
+     */
+    private List<TemplateSet> templateSets;
+
+    /**
+     * Model adaptors that read the properties of attributes of the given types, in place of the default adaptor.
+     *
+     * @parameter
+     */
+    private List<Adaptor> adaptors;
+
+    /**
+     * Attribute renderers that format attributes of the given types.
+     *
+     * @parameter
+     */
+    private List<Renderer> renderers;
+
+    /**
+     * Should the properties of objects, such as the results of controllers, be read through method handles that are
+     * found once per class and property?  When disabled, StringTemplate's reflective adaptor is used.
+     *
+     * @parameter property="st.accessorAdaptor" default-value="true"
+     */
+    private boolean accessorAdaptor;
+
+    /**
+     * Should the templates be rendered concurrently?  Log output and compile source root registration still happen in
+     * the order the templates are configured.
+     *
+     * @parameter property="st.parallel" default-value="false"
+     */
+    private boolean parallel;
+
+    /**
+     * The number of threads used to render templates when <code>parallel</code> is enabled.  Defaults to the number of
+     * available processors.
+     *
+     * @parameter property="st.threads"
+     */
+    private int threads;
+
+    /**
+     * The number of controller results that may wait to be rendered when <code>parallel</code> is enabled.  Defaults to
+     * twice the number of threads.
+     *
+     * @parameter property="st.renderQueueSize"
+     */
+    private int renderQueueSize;
+
+    /**
+     * The number of seconds a controller method may run before the template fails.  The time spent compiling the
+     * controller is not included.  Zero, the default, lets controllers run for as long as they need.
+     *
+     * @parameter property="st.controllerTimeout" default-value="0"
+     */
+    private int controllerTimeout;
+
+    /**
+     * Should every template be loaded, and its properties and data files checked against its arguments, before any
+     * controller is compiled or invoked?  The errors of all of the templates are then reported together.
+     *
+     * @parameter property="st.validate" default-value="true"
+     */
+    private boolean validate;
+
+    /**
+     * Should a template that is given properties or data files that it does not declare as arguments fail?  Otherwise
+     * they are reported as warnings, and left out when the template is rendered.
+     *
+     * @parameter property="st.failOnUndeclaredAttributes" default-value="true"
+     */
+    private boolean failOnUndeclaredAttributes;
+
+    /**
+     * Should templates be skipped when none of their inputs have changed since the last build?  The inputs are the
+     * contents of the template directory, the template's properties, the controller's configuration and the source or
+     * class file of the controller, and for templates with a controller the sources and dependencies of the project.
+     *
+     * @parameter property="st.incremental" default-value="true"
+     */
+    private boolean incremental;
+
+    /**
+     * The directory where the plugin keeps state between builds.
+     *
+     * @parameter default-value="${project.build.directory}/string-template"
+     */
+    private File workDirectory;
+
+    /**
+     * The character encoding of the rendered files, unless a template specifies its own.
+     *
+     * @parameter property="st.outputEncoding" default-value="${project.build.sourceEncoding}"
+     */
+    private String outputEncoding;
+
+    /**
+     * The character encoding of the template files.
+     *
+     * @parameter property="st.templateEncoding" default-value="${project.build.sourceEncoding}"
+     */
+    private String templateEncoding;
+
+    /**
+     * Should compiled templates be kept in the work directory and reused by later builds?  A template or group file is
+     * compiled again when its content or encoding, or the StringTemplate library, changes.
+     *
+     * @parameter property="st.templateCache" default-value="true"
+     */
+    private boolean templateCache;
+
+    /**
+     * How controllers that are not on the classpath are compiled.  With <code>maven</code> the maven-compiler-plugin is
+     * run for each controller when it is first needed.  With <code>javac</code> all of the missing controllers are
+     * compiled in memory, in a single pass, before any template is rendered.  The check goal always compiles in memory,
+     * so that it leaves the output directory as it is.
+     *
+     * @parameter property="st.controllerCompiler" default-value="maven"
+     */
+    protected String controllerCompiler;
+
+    /**
+     * Should the results of controllers be kept in snapshots in the work directory and reused by later builds?  A
+     * snapshot is reused until the class file or the properties of its controller change, so this should only be
+     * enabled for controllers whose results depend on nothing else.  Results that are not serializable are not kept.
+     *
+     * @parameter property="st.controllerSnapshots" default-value="false"
+     */
+    private boolean controllerSnapshots;
+
+    /**
+     * The number of the slowest templates to list in the log.  The time spent in each phase of every template is also
+     * written to <code>timings.json</code> in the work directory.
+     *
+     * @parameter property="st.slowestTemplates" default-value="5"
+     */
+    private int slowestTemplates;
+
+    /**
+     * How long template groups and the class loaders of controller dependencies are kept for the other executions of
+     * the plugin: <code>session</code> shares them between the modules of a build, <code>jvm</code> also keeps them
+     * for later builds in the same JVM, such as those of a Maven daemon, and <code>none</code> keeps them for this
+     * execution only.  They are replaced when their files change.
+     *
+     * @parameter property="st.sharedCaches" default-value="session"
+     */
+    private String sharedCaches;
+
+    /**
+     * The number of template groups, and of controller class loaders, that are shared between executions.  The least
+     * recently used are discarded first.
+     *
+     * @parameter property="st.sharedCacheSize" default-value="32"
+     */
+    private int sharedCacheSize;
+
+    /**
+     * Should rendered files be kept in <code>outputCacheDirectory</code>, and restored from it instead of being rendered
+     * again, even after the project has been cleaned?  A file is kept under a digest of the template directory, the
+     * template's configuration and data files, and the serialized results of its controller, so templates whose
+     * controller returns results that are not serializable are always rendered.
+     *
+     * @parameter property="st.outputCache" default-value="false"
+     */
+    private boolean outputCache;
+
+    /**
+     * The directory of the output cache, which may be shared by all of the projects and builds on a machine.
+     *
+     * @parameter property="st.outputCacheDirectory" default-value="${user.home}/.m2/string-template/outputs"
+     */
+    private File outputCacheDirectory;
+
+    /**
+     * The number of megabytes the output cache may hold.  The least recently used files are removed after each render.
+     *
+     * @parameter property="st.outputCacheSize" default-value="512"
+     */
+    private int outputCacheSize;
+
+    /**
+     * Should files be restored from the output cache as hard links, rather than copies?  This saves space and time, but
+     * should only be enabled when nothing modifies the rendered files in place.
+     *
+     * @parameter property="st.outputCacheLinks" default-value="false"
+     */
+    private boolean outputCacheLinks;
+
+    private GroupCache groups;
+
+    private GroupConfiguration groupConfiguration;
+
+    private OutputCache renderedOutputs;
+
+    private final List<File> staleOutputs = Collections.synchronizedList(new ArrayList<File>());
+
+    private TemplateCache compiledTemplates;
+
+    private final Set<String> compileSourceRoots = new HashSet<String>();
+
+    private final Set<String> resourceRoots = new HashSet<String>();
+
+    private final ConcurrentMap<File, String> directoryDigests = new ConcurrentHashMap<File, String>();
+
+    private String controllerInputs;
+
+    private FingerprintManifest manifest;
+
+    private ControllerClasspath controllerClasspath;
+
+    private ControllerResults controllerResults;
+
+    private TimingReport timingReport;
+
+    private Charset outputCharset;
+
+    private ExecutorService itemExecutor;
+
+    private ExecutionEnvironment executionEnvironment;
+
+    /**
+     * Prepares the state shared by every render: the class path of the controllers, their results and the manifest of
+     * fingerprints.
+     */
+    protected void open() throws MojoExecutionException
+    {
+        this.executionEnvironment = executionEnvironment(this.project, this.session, this.pluginManager);
+        this.outputCharset = this.getOutputCharset();
+        this.manifest = this.loadManifest();
+
+        if(!"javac".equals(this.controllerCompiler) && !"maven".equals(this.controllerCompiler))
+        {
+            throw new MojoExecutionException(String.format("Unknown controller compiler: %s (expected maven or javac)", this.controllerCompiler));
+        }
+        if("session".equals(this.sharedCaches))
+        {
+            SHARED_GROUPS.open(this.session.getRequest(), this.sharedCacheSize);
+            SHARED_CLASS_LOADERS.open(this.session.getRequest(), this.sharedCacheSize);
+        }
+        else if("jvm".equals(this.sharedCaches))
+        {
+            SHARED_GROUPS.open(null, this.sharedCacheSize);
+            SHARED_CLASS_LOADERS.open(null, this.sharedCacheSize);
+        }
+        else if(!"none".equals(this.sharedCaches))
+        {
+            throw new MojoExecutionException(String.format("Unknown shared cache scope: %s (expected session, jvm or none)", this.sharedCaches));
+        }
+
+        this.controllerClasspath = this.createControllerClasspath();
+        this.controllerResults = this.createControllerResults();
+        this.compiledTemplates = this.templateCache ? new TemplateCache(new File(this.workDirectory, "templates"), this.getLog()) : null;
+        this.groups = new GroupCache(this.isSharing() ? SHARED_GROUPS : null);
+        if(this.outputCache && !this.isChecking())
+        {
+            this.renderedOutputs = new OutputCache(this.outputCacheDirectory, this.outputCacheSize * 1024L * 1024L, this.outputCacheLinks, this.getLog());
+        }
+    }
+
+    /**
+     * @return the configured templates, followed by the templates of each template set.
+     */
+    protected List<Template> getTemplates() throws MojoExecutionException
+    {
+        List<Template> result = new ArrayList<Template>();
+        if(null != this.templates)
+        {
+            result.addAll(this.templates);
+        }
+        if(null != this.templateSets)
+        {
+            for(TemplateSet templateSet : this.templateSets)
+            {
+                List<Template> expanded = templateSet.expand(this.project.getBasedir());
+                this.getLog().debug(String.format("The template set %s has %d templates.", templateSet, expanded.size()));
+                result.addAll(expanded);
+            }
+        }
+
+        if(result.isEmpty())
+        {
+            throw new MojoExecutionException("There are no templates to render; configure templates or templateSets.");
+        }
+        return result;
+    }
+
+    /**
+     * Renders the given templates, skipping those whose inputs have not changed when the build is incremental.
+     */
+    protected RenderCounts render(List<Template> templates) throws MojoExecutionException
+    {
+        this.timingReport = new TimingReport();
+        this.groups.revalidate();
+        this.directoryDigests.clear();
+        this.controllerInputs = null == this.manifest ? null : this.digestControllerInputs(templates);
+
+        RenderCounts counts = new RenderCounts();
+        try
+        {
+            List<Template> rendered = this.getRenderedTemplates(templates);
+            for(Template template : rendered)
+            {
+                if(null != template.getController())
+                {
+                    this.controllerResults.expect(template.getController());
+                }
+            }
+            if(this.validate)
+            {
+                this.validateTemplates(rendered);
+            }
+            if("javac".equals(this.controllerCompiler) || this.isChecking())
+            {
+                this.compileControllers(rendered);
+            }
+            if(null == this.groupConfiguration)
+            {
+                this.groupConfiguration = this.createGroupConfiguration();
+            }
+
+            if((this.parallel || this.isChecking()) && templates.size() > 1)
+            {
+                this.renderConcurrently(templates, counts);
+            }
+            else
+            {
+                for(Template template : templates)
+                {
+                    counts.add(this.renderTemplate(template, this.timingReport.add(template), this.getLog()));
+                    this.addCompileSourceRoot(template.getCompileSourceRoot(this.project.getBasedir()));
+                }
+            }
+            this.addTemplateSetRoots();
+        }
+        finally
+        {
+            this.saveManifest();
+            this.writeTimingReport();
+        }
+
+        if(this.isChecking())
+        {
+            this.getLog().info(String.format("Checked %d templates: %d files are stale, %d are up to date.",
+                templates.size(), counts.getWritten(), counts.getUnchanged()));
+        }
+        else
+        {
+            this.getLog().info(String.format("Rendered %d templates (%d skipped): %d files written, %d unchanged.",
+                templates.size(), counts.getSkipped(), counts.getWritten(), counts.getUnchanged()));
+        }
+        if(null != this.compiledTemplates)
+        {
+            this.getLog().debug(String.format("%d template files were loaded from the template cache and %d were compiled.",
+                this.compiledTemplates.getHits(), this.compiledTemplates.getMisses()));
+        }
+        if(this.isSharing())
+        {
+            this.getLog().info(String.format("Shared caches: %s for template groups, %s for controller class loaders.",
+                SHARED_GROUPS.summary(), SHARED_CLASS_LOADERS.summary()));
+            this.getLog().debug(SHARED_GROUPS.toString());
+            this.getLog().debug(SHARED_CLASS_LOADERS.toString());
+        }
+        if(null != this.renderedOutputs)
+        {
+            this.renderedOutputs.evict();
+            this.getLog().info(this.renderedOutputs.toString());
+        }
+        return counts;
+    }
+
+    /**
+     * Discards the controller class loader and the results of the controllers, so that the next render loads the
+     * controllers again.
+     */
+    protected void reloadControllers()
+    {
+        this.controllerResults.close();
+        this.closeControllerClasspath();
+        this.controllerClasspath = this.createControllerClasspath();
+        this.controllerResults = this.createControllerResults();
+        this.groupConfiguration = null;
+    }
+
+    /**
+     * Should the templates be rendered only to compare their output with the output files, which are left untouched?
+     * Every template is then rendered, and the files whose content differs are collected as stale outputs.
+     */
+    protected boolean isChecking()
+    {
+        return false;
+    }
+
+    /**
+     * Should the results of the controllers be kept for later renders, rather than released after the last template
+     * that uses them?
+     */
+    protected boolean isRetainingResults()
+    {
+        return false;
+    }
+
+    /**
+     * @return the output files found to be out of date by the renders of a check, in the order they were found.
+     */
+    protected List<File> getStaleOutputs()
+    {
+        synchronized(this.staleOutputs)
+        {
+            return new ArrayList<File>(this.staleOutputs);
+        }
+    }
+
+    protected void close()
+    {
+        if(null != this.itemExecutor)
+        {
+            this.itemExecutor.shutdownNow();
+            this.itemExecutor = null;
+        }
+        if(null != this.controllerResults)
+        {
+            this.controllerResults.close();
+        }
+        if(null != this.controllerClasspath)
+        {
+            this.closeControllerClasspath();
+        }
+        if(null != this.groups)
+        {
+            this.groups.close();
+        }
+    }
+
+    /**
+     * Adds the output directory of each template set to the project, as a compile source root or a resource directory.
+     */
+    private void addTemplateSetRoots() throws MojoExecutionException
+    {
+        if(null == this.templateSets)
+        {
+            return;
+        }
+
+        for(TemplateSet templateSet : this.templateSets)
+        {
+            String root = templateSet.getOutputDirectory(this.project.getBasedir()).getPath();
+            String rootType = templateSet.getRootType();
+            if("compile".equals(rootType))
+            {
+                this.addCompileSourceRoot(root);
+            }
+            else if("resource".equals(rootType) && this.resourceRoots.add(root))
+            {
+                this.getLog().info("Adding resource directory: " + root);
+                Resource resource = new Resource();
+                resource.setDirectory(root);
+                this.project.addResource(resource);
+            }
+        }
+    }
+
+    private void addCompileSourceRoot(String root)
+    {
+        if(null != root && this.compileSourceRoots.add(root))
+        {
+            this.getLog().info("Adding compile source root: " + root);
+            this.project.addCompileSourceRoot(root);
+        }
+    }
+
+    private boolean isSharing()
+    {
+        return !"none".equals(this.sharedCaches);
+    }
+
+    private ControllerClasspath createControllerClasspath()
+    {
+        return new ControllerClasspath(this.project, this.session, this.dependenciesResolver, this.isSharing() ? SHARED_CLASS_LOADERS : null);
+    }
+
+    /**
+     * Loads the configured adaptors and renderers, which may be compiled with the controllers.
+     */
+    private GroupConfiguration createGroupConfiguration() throws MojoExecutionException
+    {
+        ClassLoader classLoader = null;
+        if(this.hasRegistrations())
+        {
+            try
+            {
+                classLoader = this.controllerClasspath.getClassLoader();
+            }
+            catch(Exception e)
+            {
+                throw new MojoExecutionException(String.format("Unable to load the adaptors and renderers (%s)", e.getMessage()), e);
+            }
+        }
+        return new GroupConfiguration(this.accessorAdaptor, this.adaptors, this.renderers, classLoader);
+    }
+
+    private boolean hasRegistrations()
+    {
+        return (null != this.adaptors && !this.adaptors.isEmpty()) || (null != this.renderers && !this.renderers.isEmpty());
+    }
+
+    private ControllerResults createControllerResults()
+    {
+        return new ControllerResults(this.controllerSnapshots ? new File(this.workDirectory, "controllers") : null, this.controllerTimeout, this.isRetainingResults());
+    }
+
+    private String getTemplateEncoding()
+    {
+        if(null == this.templateEncoding || this.templateEncoding.isEmpty())
+        {
+            return "UTF-8";
+        }
+        return this.templateEncoding;
+    }
+
+    private Charset getOutputCharset() throws MojoExecutionException
+    {
+        if(null == this.outputEncoding || this.outputEncoding.isEmpty())
+        {
+            Charset charset = Charset.defaultCharset();
+            this.getLog().warn(String.format("File encoding has not been set, using platform encoding %s, i.e. build is platform dependent!", charset.name()));
+            return charset;
+        }
+
+        try
+        {
+            return Charset.forName(this.outputEncoding);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(String.format("Unsupported output encoding: %s", this.outputEncoding), e);
+        }
+    }
+
+    /**
+     * @return the templates that will not be skipped because their inputs are unchanged.
+     */
+    private List<Template> getRenderedTemplates(List<Template> templates) throws MojoExecutionException
+    {
+        if(null == this.manifest)
+        {
+            return templates;
+        }
+
+        List<Template> result = new ArrayList<Template>(templates.size());
+        for(Template template : templates)
+        {
+            File outputFile = template.getOutputFile(this.project.getBasedir());
+            if(null != this.getRenderReason(template, outputFile, this.fingerprint(template, this.getTemplateSource(template))))
+            {
+                result.add(template);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compiles every controller that can not be loaded in one pass for each source and target version, and makes the
+     * classes available from memory without writing them to the output directory.
+     */
+    private void compileControllers(List<Template> templates) throws MojoExecutionException
+    {
+        Timings timings = this.timingReport.getExecution();
+        Map<String, List<File>> sourceFiles = new LinkedHashMap<String, List<File>>();
+        Set<String> classNames = new HashSet<String>();
+        for(Template template : templates)
+        {
+            Controller controller = template.getController();
+            if(null == controller || !controller.isCompile() || !classNames.add(controller.getClassName()) || controller.isLoadable(this.controllerClasspath, timings))
+            {
+                continue;
+            }
+
+            File sourceFile = controller.findSourceFile(this.project);
+            if(null == sourceFile)
+            {
+                throw new MojoExecutionException(String.format("The class %s is not in the classpath, and its source could not be found in the project.", controller.getClassName()));
+            }
+
+            String versions = controller.getSourceVersion() + File.pathSeparator + controller.getTargetVersion();
+            List<File> files = sourceFiles.get(versions);
+            if(null == files)
+            {
+                files = new ArrayList<File>();
+                sourceFiles.put(versions, files);
+            }
+            files.add(sourceFile);
+        }
+
+        if(sourceFiles.isEmpty())
+        {
+            return;
+        }
+
+        long start = timings.start();
+        try
+        {
+            ControllerCompiler compiler = new ControllerCompiler(this.controllerClasspath.getElements(), this.project.getCompileSourceRoots());
+            Map<String, byte[]> classes = new HashMap<String, byte[]>();
+            for(Map.Entry<String, List<File>> entry : sourceFiles.entrySet())
+            {
+                String[] versions = entry.getKey().split(File.pathSeparator);
+                this.getLog().info(String.format("Compiling %d controller(s) in memory...", entry.getValue().size()));
+                classes.putAll(compiler.compile(entry.getValue(), versions[0], versions[1], this.getLog()));
+            }
+            this.controllerClasspath.addCompiledClasses(classes);
+        }
+        catch(MojoExecutionException e)
+        {
+            throw e;
+        }
+        catch(Exception e)
+        {
+            throw new MojoExecutionException(String.format("Unable to compile the controllers (%s)", e.getMessage()), e);
+        }
+        finally
+        {
+            timings.stop(Timings.Phase.CONTROLLER_COMPILATION, start);
+        }
+    }
+
+    /**
+     * Loads every template that will be rendered concurrently, and checks its configuration against its arguments, so
+     * that the errors in all of the templates are reported before the first controller is compiled or invoked.
+     */
+    private void validateTemplates(List<Template> templates) throws MojoExecutionException
+    {
+        if(templates.isEmpty())
+        {
+            return;
+        }
+
+        Timings timings = this.timingReport.getExecution();
+        long start = timings.start();
+
+        // without adaptors or renderers the configuration loads no classes, so the groups loaded now are the ones the
+        // templates are rendered with; otherwise the adaptors may only be compiled with the controllers
+        if(null == this.groupConfiguration && !this.hasRegistrations())
+        {
+            this.groupConfiguration = this.createGroupConfiguration();
+        }
+        final GroupConfiguration configuration = null == this.groupConfiguration
+            ? new GroupConfiguration(this.accessorAdaptor, null, null, null) : this.groupConfiguration;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.getThreadCount(), templates.size()));
+        try
+        {
+            List<BufferedLog> logs = new ArrayList<BufferedLog>(templates.size());
+            List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>(templates.size());
+            for(final Template template : templates)
+            {
+                final BufferedLog log = new BufferedLog(this.getLog());
+                logs.add(log);
+                futures.add(executor.submit(new Callable<List<String>>()
+                {
+                    public List<String> call() throws Exception
+                    {
+                        return validateTemplate(template, configuration, log);
+                    }
+                }));
+            }
+
+            List<String> failures = new ArrayList<String>();
+            for(int i = 0; i < templates.size(); i++)
+            {
+                Template template = templates.get(i);
+                List<String> errors;
+                try
+                {
+                    errors = this.await(futures.get(i));
+                }
+                catch(ExecutionException e)
+                {
+                    errors = Collections.singletonList(e.getCause().getMessage());
+                }
+
+                logs.get(i).replay();
+                for(String error : errors)
+                {
+                    this.getLog().error(String.format("Template %s: %s", template.getName(), error));
+                }
+                if(!errors.isEmpty())
+                {
+                    failures.add(template.getName());
+                }
+            }
+
+            if(!failures.isEmpty())
+            {
+                throw new MojoExecutionException(String.format("%d of %d templates are not valid: %s", failures.size(), templates.size(), failures));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            timings.stop(Timings.Phase.GROUP_LOAD, start);
+        }
+    }
+
+    /**
+     * @return the errors of the template, and of the index template of its shards.
+     */
+    private List<String> validateTemplate(Template template, GroupConfiguration configuration, Log log) throws MojoExecutionException
+    {
+        List<String> errors = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        names.add(template.getName());
+        if(template.isSharded())
+        {
+            try
+            {
+                template.getShard().validate(template);
+            }
+            catch(MojoExecutionException e)
+            {
+                errors.add(e.getMessage());
+            }
+            if(null != template.getShard().getIndexTemplate())
+            {
+                names.add(template.getShard().getIndexTemplate());
+            }
+        }
+
+        File templateSource = this.getTemplateSource(template);
+        TemplateGroup group = this.groups.get(templateSource, this.getTemplateEncoding(), configuration);
+        for(String name : names)
+        {
+            ErrorBuffer errorBuffer = new ErrorBuffer();
+            ST st = group.getInstanceOf(name, errorBuffer, this.compiledTemplates);
+            for(Object message : errorBuffer.errors)
+            {
+                errors.add(message.toString());
+            }
+            if(null == st)
+            {
+                if(errorBuffer.errors.isEmpty())
+                {
+                    errors.add(String.format("The template %s could not be found in %s.", name, templateSource));
+                }
+                continue;
+            }
+
+            for(String attribute : template.getUndeclaredAttributes(st))
+            {
+                // the index of the shards receives them in place of the collection
+                if(!name.equals(template.getName()) && attribute.equals(template.getShard().getAttribute()))
+                {
+                    continue;
+                }
+
+                String message = Template.describeUndeclared(st, name, attribute);
+                if(this.failOnUndeclaredAttributes)
+                {
+                    errors.add(message);
+                }
+                else
+                {
+                    log.warn(String.format("Template %s: %s It is left out.", template.getName(), message));
+                }
+            }
+        }
+        return errors;
+    }
+
+    private void closeControllerClasspath()
+    {
+        try
+        {
+            this.controllerClasspath.close();
+        }
+        catch(IOException e)
+        {
+            this.getLog().warn(String.format("Unable to close the controller class loader (%s)", e.getMessage()));
+        }
+    }
+
+    private FingerprintManifest loadManifest() throws MojoExecutionException
+    {
+        // a check compares every output with its file, whatever the manifest says
+        if(!this.incremental || this.isChecking())
+        {
+            return null;
+        }
+
+        File file = new File(this.workDirectory, "fingerprints.properties");
+        try
+        {
+            return new FingerprintManifest(file);
+        }
+        catch(IOException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to read the fingerprint manifest: %s (%s)", file, e.getMessage()), e);
+        }
+    }
+
+    private void saveManifest() throws MojoExecutionException
+    {
+        if(null == this.manifest)
+        {
+            return;
+        }
+
+        try
+        {
+            this.manifest.save();
+        }
+        catch(IOException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to write the fingerprint manifest: %s", e.getMessage()), e);
+        }
+    }
+
+    private void writeTimingReport()
+    {
+        File file = new File(this.workDirectory, "timings.json");
+        try
+        {
+            this.timingReport.write(file, this.project.getId());
+        }
+        catch(IOException e)
+        {
+            this.getLog().warn(String.format("Unable to write the timing report: %s (%s)", file, e.getMessage()));
+        }
+        this.timingReport.summarize(this.getLog(), this.slowestTemplates);
+    }
+
+    /**
+     * Renders the templates in a two stage pipeline.  The first stage decides which templates must be rendered and
+     * invokes their controllers concurrently; the second takes the results from a bounded queue and renders them.  A
+     * slow controller overlaps with the rendering of other templates, and no more than the size of the queue of results
+     * wait to be rendered at once.
+     */
+    private void renderConcurrently(List<Template> templates, RenderCounts counts) throws MojoExecutionException
+    {
+        int threadCount = Math.min(this.getThreadCount(), templates.size());
+        int queueSize = this.renderQueueSize > 0 ? this.renderQueueSize : threadCount * 2;
+        this.getLog().info(String.format("Rendering %d templates using %d controller and %d render threads.", templates.size(), threadCount, threadCount));
+
+        final BlockingQueue<Runnable> renderQueue = new ArrayBlockingQueue<Runnable>(queueSize);
+        ExecutorService controllerExecutor = Executors.newFixedThreadPool(threadCount);
+        ExecutorService renderExecutor = Executors.newFixedThreadPool(threadCount);
+        try
+        {
+            for(int i = 0; i < threadCount; i++)
+            {
+                renderExecutor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            while(true)
+                            {
+                                renderQueue.take().run();
+                            }
+                        }
+                        catch(InterruptedException e)
+                        {
+                            // the pipeline is shut down
+                        }
+                    }
+                });
+            }
+
+            List<BufferedLog> logs = new ArrayList<BufferedLog>(templates.size());
+            List<Future<Future<RenderCounts>>> futures = new ArrayList<Future<Future<RenderCounts>>>(templates.size());
+            for(final Template template : templates)
+            {
+                final BufferedLog log = new BufferedLog(this.getLog());
+                final Timings timings = this.timingReport.add(template);
+                logs.add(log);
+                futures.add(controllerExecutor.submit(new Callable<Future<RenderCounts>>()
+                {
+                    public Future<RenderCounts> call() throws Exception
+                    {
+                        final PreparedTemplate prepared = prepareTemplate(template, timings, log);
+                        FutureTask<RenderCounts> render = new FutureTask<RenderCounts>(new Callable<RenderCounts>()
+                        {
+                            public RenderCounts call() throws Exception
+                            {
+                                return renderPrepared(prepared, log);
+                            }
+                        });
+
+                        if(null == prepared)
+                        {
+                            render.run();
+                        }
+                        else
+                        {
+                            renderQueue.put(render);
+                        }
+                        return render;
+                    }
+                }));
+            }
+
+            List<String> failures = new ArrayList<String>();
+            for(int i = 0; i < templates.size(); i++)
+            {
+                Template template = templates.get(i);
+                try
+                {
+                    RenderCounts templateCounts = this.await(this.await(futures.get(i)));
+                    logs.get(i).replay();
+                    this.addCompileSourceRoot(template.getCompileSourceRoot(this.project.getBasedir()));
+                    counts.add(templateCounts);
+                }
+                catch(ExecutionException e)
+                {
+                    logs.get(i).replay();
+                    this.getLog().error(String.format("Unable to render template %s to %s (%s)", template.getName(), template.getTarget(), e.getCause().getMessage()));
+                    failures.add(template.getTarget().getPath());
+                }
+            }
+
+            if(!failures.isEmpty())
+            {
+                throw new MojoExecutionException(String.format("Unable to render %d of %d templates: %s", failures.size(), templates.size(), failures));
+            }
+        }
+        finally
+        {
+            controllerExecutor.shutdownNow();
+            renderExecutor.shutdownNow();
+        }
+    }
+
+    private <T> T await(Future<T> future) throws ExecutionException, MojoExecutionException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for templates to render.", e);
+        }
+    }
+
+    private int getThreadCount()
+    {
+        if(this.threads > 0)
+        {
+            return this.threads;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private RenderCounts renderTemplate(Template template, Timings timings, Log log) throws MojoExecutionException
+    {
+        return this.renderPrepared(this.prepareTemplate(template, timings, log), log);
+    }
+
+    /**
+     * Decides whether the template must be rendered, creates an instance of it and invokes its controller.
+     *
+     * @return the template ready to render, or null if it is skipped.
+     */
+    private PreparedTemplate prepareTemplate(Template template, Timings timings, Log log) throws MojoExecutionException
+    {
+        File templateSource = this.getTemplateSource(template);
+        File outputFile = template.getOutputFile(this.project.getBasedir());
+
+        String fingerprint = null;
+        if(null != this.manifest)
+        {
+            fingerprint = this.fingerprint(template, templateSource);
+            String reason = this.getRenderReason(template, outputFile, fingerprint);
+            if(null == reason)
+            {
+                log.info(String.format("Skipping template %s: its inputs have not changed since %s was rendered.", template.getName(), outputFile));
+                timings.setSkipped();
+                return null;
+            }
+            log.info(String.format("Rendering template %s: %s.", template.getName(), reason));
+            this.manifest.remove(outputFile);
+        }
+
+        long start = timings.start();
+        TemplateGroup group = this.groups.get(templateSource, this.getTemplateEncoding(), this.groupConfiguration);
+        ErrorBuffer errorBuffer = new ErrorBuffer();
+        ST st = group.getInstanceOf(template.getName(), errorBuffer, this.compiledTemplates);
+        timings.stop(Timings.Phase.GROUP_LOAD, start);
+
+        if(null == st || !errorBuffer.errors.isEmpty())
+        {
+            throw new MojoExecutionException(String.format("Unable to execute template. %n%s", errorBuffer.toString()));
+        }
+
+        Map<String, Object> data = template.loadData(this.project.getBasedir(), timings);
+        try
+        {
+            Object results = template.invokeController(this.executionEnvironment, this.controllerResults, this.controllerClasspath, log, timings);
+            String cacheInputs = null;
+            if(null != this.renderedOutputs)
+            {
+                try
+                {
+                    cacheInputs = this.getCacheInputs(template, templateSource);
+                }
+                catch(MojoExecutionException e)
+                {
+                    template.closeResults(results);
+                    throw e;
+                }
+            }
+            return new PreparedTemplate(template, outputFile, fingerprint, group, st, results, data, cacheInputs, timings);
+        }
+        catch(MojoExecutionException e)
+        {
+            template.closeData(data);
+            throw e;
+        }
+    }
+
+    private RenderCounts renderPrepared(PreparedTemplate prepared, Log log) throws MojoExecutionException
+    {
+        RenderCounts counts = new RenderCounts();
+        if(null == prepared)
+        {
+            counts.addSkipped();
+            return counts;
+        }
+
+        Template template = prepared.template;
+        try
+        {
+            if(template.isSharded())
+            {
+                List<File> outputs;
+                try
+                {
+                    outputs = this.renderShards(prepared, counts, log);
+                }
+                finally
+                {
+                    template.closeResults(prepared.results);
+                }
+                if(null != prepared.fingerprint)
+                {
+                    this.putOutputs(prepared, outputs, log);
+                }
+            }
+            else if(template.isFanOut())
+            {
+                List<File> outputs = this.renderItems(template, prepared.group, prepared.results, prepared.data, prepared.cacheInputs, counts, log, prepared.timings);
+                if(null != prepared.fingerprint)
+                {
+                    this.putOutputs(prepared, outputs, log);
+                }
+            }
+            else
+            {
+                try
+                {
+                    this.renderOutput(template, prepared.st, prepared.results, prepared.data, prepared.outputFile, prepared.cacheInputs, counts, log, prepared.timings);
+                }
+                finally
+                {
+                    template.closeResults(prepared.results);
+                }
+                if(null != prepared.fingerprint)
+                {
+                    this.manifest.put(prepared.outputFile, prepared.fingerprint);
+                }
+            }
+        }
+        finally
+        {
+            template.closeData(prepared.data);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Records the files rendered for a template with several outputs, and deletes those it rendered before that it no
+     * longer renders, so that they are not compiled or packaged with the others.
+     */
+    private void putOutputs(PreparedTemplate prepared, List<File> outputs, Log log)
+    {
+        for(File stale : this.manifest.put(prepared.outputFile, prepared.fingerprint, outputs))
+        {
+            if(stale.delete())
+            {
+                log.info(String.format("Deleted %s: template %s no longer renders it.", stale, prepared.template.getName()));
+            }
+            else if(stale.exists())
+            {
+                log.warn(String.format("Unable to delete %s, which template %s no longer renders.", stale, prepared.template.getName()));
+            }
+        }
+    }
+
+    /**
+     * Renders each result of the controller to the file named by the template's target pattern.  The results are
+     * consumed as they are rendered, with a bounded number in flight at once, so they are never all held in memory.
+     *
+     * @return the output files that were rendered.
+     */
+    private List<File> renderItems(final Template template, final TemplateGroup group, Object results, final Map<String, Object> data, final String cacheInputs,
+        final RenderCounts counts, final Log log, final Timings timings)
+        throws MojoExecutionException
+    {
+        final Iterator<?> items = this.getItems(template, results);
+        List<File> outputs;
+        try
+        {
+            outputs = this.renderAll(template, new Iterator<Callable<File>>()
+            {
+                public boolean hasNext()
+                {
+                    return items.hasNext();
+                }
+
+                public Callable<File> next()
+                {
+                    final Object item = items.next();
+                    return new Callable<File>()
+                    {
+                        public File call() throws Exception
+                        {
+                            return renderItem(template, group, item, data, cacheInputs, counts, log, timings);
+                        }
+                    };
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        }
+        finally
+        {
+            if(results instanceof BaseStream)
+            {
+                ((BaseStream<?, ?>)results).close();
+            }
+        }
+
+        log.info(String.format("Rendered %d files for template %s.", outputs.size(), template.getName()));
+        return outputs;
+    }
+
+    /**
+     * Renders the chunks of the template's sharded attribute concurrently, each to its own file, and then the index of
+     * the shards.  The other attributes are the same for every shard.
+     *
+     * @return the output files that were rendered, ending with the index.
+     */
+    private List<File> renderShards(final PreparedTemplate prepared, final RenderCounts counts, final Log log) throws MojoExecutionException
+    {
+        final Template template = prepared.template;
+        final Shard shard = template.getShard();
+        shard.validate(template);
+
+        final Map<String, Object> results = new LinkedHashMap<String, Object>();
+        final Map<String, Object> data = new LinkedHashMap<String, Object>(prepared.data);
+        final boolean controlled = null != prepared.results;
+        if(controlled)
+        {
+            if(!(prepared.results instanceof Map))
+            {
+                throw new MojoExecutionException(String.format("The results of the sharded template %s were of type %s instead of a Map.",
+                    template.getName(), prepared.results.getClass().getName()));
+            }
+            for(Map.Entry<?, ?> entry : ((Map<?, ?>)prepared.results).entrySet())
+            {
+                results.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+
+        // each chunk takes the place of the collection, in the results or in the data of a file; the attributes added
+        // for the shards go with the results, whose digest keys the output cache
+        final boolean inResults = results.containsKey(shard.getAttribute());
+        Object collection = inResults ? results.remove(shard.getAttribute()) : data.remove(shard.getAttribute());
+        final Map<String, Object> added = controlled ? results : data;
+        final boolean numbered = isDeclared(prepared.st, "shard");
+
+        final Iterator<List<?>> chunks = shard.split(collection);
+        final List<Map<String, Object>> shards = new ArrayList<Map<String, Object>>();
+        List<File> outputs = this.renderAll(template, new Iterator<Callable<File>>()
+        {
+            private int offset = 0;
+
+            public boolean hasNext()
+            {
+                return chunks.hasNext();
+            }
+
+            public Callable<File> next()
+            {
+                List<?> chunk = chunks.next();
+                final int number = shards.size() + 1;
+                final Map<String, Object> shardResults = new LinkedHashMap<String, Object>(results);
+                final Map<String, Object> shardData = new LinkedHashMap<String, Object>(data);
+                (inResults ? shardResults : shardData).put(shard.getAttribute(), chunk);
+                if(numbered)
+                {
+                    (controlled ? shardResults : shardData).put("shard", number);
+                }
+
+                Map<String, Object> description = new LinkedHashMap<String, Object>();
+                description.put("number", number);
+                description.put("offset", this.offset);
+                description.put("size", chunk.size());
+                shards.add(description);
+                this.offset += chunk.size();
+
+                return new Callable<File>()
+                {
+                    public File call() throws Exception
+                    {
+                        File outputFile = template.getShardFile(project.getBasedir(), number);
+                        ST st = getInstanceOf(template.getName(), prepared.group, prepared.timings);
+                        String cacheInputs = null == prepared.cacheInputs ? null
+                            : new Fingerprint().update(prepared.cacheInputs).update(String.valueOf(number)).finish();
+                        renderOutput(template, st, controlled ? shardResults : null, shardData, outputFile, cacheInputs, counts, log, prepared.timings);
+                        return outputFile;
+                    }
+                };
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        });
+        for(int i = 0; i < outputs.size(); i++)
+        {
+            shards.get(i).put("file", outputs.get(i).getName());
+        }
+        log.info(String.format("Rendered %d shards of %s for template %s.", outputs.size(), shard.getAttribute(), template.getName()));
+
+        if(null != shard.getIndexTemplate())
+        {
+            File indexFile = shard.getIndexFile(this.project.getBasedir());
+            ST st = this.getInstanceOf(shard.getIndexTemplate(), prepared.group, prepared.timings);
+            added.put("shards", shards);
+            String cacheInputs = null == prepared.cacheInputs ? null
+                : new Fingerprint().update(prepared.cacheInputs).update(shard.getIndexTemplate()).update(String.valueOf(shards.size())).finish();
+            this.renderOutput(template, st, controlled ? results : null, data, indexFile, cacheInputs, counts, log, prepared.timings);
+            outputs.add(indexFile);
+        }
+        return outputs;
+    }
+
+    /**
+     * Runs the rendering tasks concurrently, taking the next task only while few enough are in flight.
+     *
+     * @return the output files of the tasks, in the order the tasks were taken.
+     */
+    private List<File> renderAll(Template template, Iterator<Callable<File>> tasks) throws MojoExecutionException
+    {
+        int threadCount = this.getThreadCount();
+        final Semaphore permits = new Semaphore(threadCount * 2);
+        CompletionService<File> completionService = new ExecutorCompletionService<File>(this.getItemExecutor(threadCount));
+
+        List<Future<File>> futures = new ArrayList<Future<File>>();
+        int pending = 0;
+        Throwable failure = null;
+        try
+        {
+            while(null == failure && tasks.hasNext())
+            {
+                final Callable<File> task = tasks.next();
+                permits.acquire();
+                futures.add(completionService.submit(new Callable<File>()
+                {
+                    public File call() throws Exception
+                    {
+                        try
+                        {
+                            return task.call();
+                        }
+                        finally
+                        {
+                            permits.release();
+                        }
+                    }
+                }));
+                pending++;
+
+                Future<File> done;
+                while(null == failure && null != (done = completionService.poll()))
+                {
+                    pending--;
+                    failure = this.collect(done);
+                }
+            }
+
+            while(pending > 0)
+            {
+                pending--;
+                Throwable error = this.collect(completionService.take());
+                failure = null == failure ? error : failure;
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while rendering template results.", e);
+        }
+
+        if(null != failure)
+        {
+            throw new MojoExecutionException(String.format("Unable to render a result of template %s (%s)", template.getName(), failure.getMessage()), failure);
+        }
+
+        // every task has completed by now
+        List<File> outputs = new ArrayList<File>(futures.size());
+        for(Future<File> future : futures)
+        {
+            outputs.add(this.getOutput(future));
+        }
+        return outputs;
+    }
+
+    private File renderItem(Template template, TemplateGroup group, Object item, Map<String, Object> data, String cacheInputs, RenderCounts counts, Log log,
+        Timings timings)
+        throws MojoExecutionException
+    {
+        if(!(item instanceof Map))
+        {
+            throw new MojoExecutionException(String.format("A result of type %s was found; each result must be a Map<String, Object>.", null == item ? null : item.getClass().getName()));
+        }
+
+        ST st = this.getInstanceOf(template.getName(), group, timings);
+        File outputFile = template.getOutputFile(this.project.getBasedir(), (Map<?, ?>)item);
+        try
+        {
+            this.renderOutput(template, st, item, data, outputFile, cacheInputs, counts, log, timings);
+        }
+        finally
+        {
+            template.closeResults(item);
+        }
+        return outputFile;
+    }
+
+    /**
+     * Restores the output file from the output cache if it is there, and otherwise renders it and adds it to the cache.
+     *
+     * @param cacheInputs the fingerprint of the template's inputs other than its results, or null to always render.
+     */
+    private void renderOutput(Template template, ST st, Object results, Map<String, Object> data, File outputFile, String cacheInputs, RenderCounts counts,
+        Log log, Timings timings)
+        throws MojoExecutionException
+    {
+        if(this.isChecking())
+        {
+            this.installAttributes(template, st, results, data, timings);
+            boolean stale = !template.check(st, outputFile, this.outputCharset, timings);
+            if(stale)
+            {
+                log.warn(String.format("The output file %s is not up to date.", outputFile));
+                this.staleOutputs.add(outputFile);
+            }
+            counts.addOutput(stale);
+            return;
+        }
+
+        String key = null == cacheInputs ? null : this.renderedOutputs.getKey(cacheInputs, results);
+        if(null != key && this.renderedOutputs.restore(key, outputFile, counts, timings))
+        {
+            log.debug(String.format("Restored %s from the output cache.", outputFile));
+            return;
+        }
+
+        this.installAttributes(template, st, results, data, timings);
+        counts.addOutput(template.render(st, outputFile, this.outputCharset, log, timings));
+        if(null != key)
+        {
+            this.renderedOutputs.store(key, outputFile);
+        }
+    }
+
+    private ST getInstanceOf(String name, TemplateGroup group, Timings timings) throws MojoExecutionException
+    {
+        long start = timings.start();
+        ErrorBuffer errorBuffer = new ErrorBuffer();
+        ST st = group.getInstanceOf(name, errorBuffer, this.compiledTemplates);
+        timings.stop(Timings.Phase.GROUP_LOAD, start);
+        if(null == st)
+        {
+            throw new MojoExecutionException(String.format("Unable to execute template. %n%s", errorBuffer.toString()));
+        }
+        return st;
+    }
+
+    private void installAttributes(Template template, ST st, Object results, Map<String, Object> data, Timings timings) throws MojoExecutionException
+    {
+        long start = timings.start();
+        try
+        {
+            timings.addAttributes(template.applyResults(st, results) + template.installProperties(st, !this.failOnUndeclaredAttributes)
+                + template.installData(st, data, !this.failOnUndeclaredAttributes));
+        }
+        finally
+        {
+            timings.stop(Timings.Phase.ATTRIBUTE_INSTALLATION, start);
+        }
+    }
+
+    private Throwable collect(Future<File> future) throws InterruptedException
+    {
+        try
+        {
+            future.get();
+            return null;
+        }
+        catch(ExecutionException e)
+        {
+            return e.getCause();
+        }
+    }
+
+    private File getOutput(Future<File> future) throws MojoExecutionException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while rendering template results.", e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Does the template declare an argument with the given name?
+     */
+    private static boolean isDeclared(ST st, String name)
+    {
+        return null != st.impl.formalArguments && st.impl.formalArguments.containsKey(name);
+    }
+
+    private Iterator<?> getItems(Template template, Object results) throws MojoExecutionException
+    {
+        if(results instanceof Iterable)
+        {
+            return ((Iterable<?>)results).iterator();
+        }
+        else if(results instanceof Iterator)
+        {
+            return (Iterator<?>)results;
+        }
+        else if(results instanceof BaseStream)
+        {
+            return new StreamIterator((BaseStream<?, ?>)results);
+        }
+        else if(results instanceof Map)
+        {
+            return Collections.singleton(results).iterator();
+        }
+        else if(null == results)
+        {
+            return Collections.singleton(Collections.emptyMap()).iterator();
+        }
+
+        throw new MojoExecutionException(String.format("The target of template %s is a pattern, but its controller returned a %s.", template.getName(), results.getClass().getName()));
+    }
+
+    private synchronized ExecutorService getItemExecutor(int threadCount)
+    {
+        if(null == this.itemExecutor)
+        {
+            this.itemExecutor = Executors.newFixedThreadPool(threadCount);
+        }
+        return this.itemExecutor;
+    }
+
+    private String fingerprint(Template template, File templateSource) throws MojoExecutionException
+    {
+        try
+        {
+            return template.fingerprint(this.getInputs(templateSource), this.controllerInputs, this.project);
+        }
+        catch(IOException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to fingerprint the template %s (%s)", template.getName(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Digests what the controllers may depend on besides their own source or class file: the sources of the project
+     * outside of its build directory, and the dependencies on its classpath.  This is done before any template is
+     * rendered, since rendering adds compile source roots to the project.
+     *
+     * @return the digest, or null if no template has a controller.
+     */
+    private String digestControllerInputs(List<Template> templates) throws MojoExecutionException
+    {
+        boolean controlled = false;
+        for(Template template : templates)
+        {
+            controlled |= null != template.getController();
+        }
+        if(!controlled)
+        {
+            return null;
+        }
+
+        Path buildDirectory = new File(this.project.getBuild().getDirectory()).getAbsoluteFile().toPath();
+        File outputDirectory = new File(this.project.getBuild().getOutputDirectory()).getAbsoluteFile();
+        Fingerprint fingerprint = new Fingerprint();
+        try
+        {
+            List<String> sourceRoots = new ArrayList<String>((List<String>)this.project.getCompileSourceRoots());
+            Collections.sort(sourceRoots);
+            for(String sourceRoot : sourceRoots)
+            {
+                // generated sources, the rendered templates among them, change with every render
+                File directory = new File(sourceRoot).getAbsoluteFile();
+                if(!directory.toPath().startsWith(buildDirectory))
+                {
+                    fingerprint.update(directory.getPath()).updateDirectory(directory);
+                }
+            }
+            for(String element : (List<String>)this.project.getCompileClasspathElements())
+            {
+                // the project's own classes are compiled from the sources above
+                File file = new File(element).getAbsoluteFile();
+                if(!file.equals(outputDirectory))
+                {
+                    fingerprint.updateStamp(file);
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to fingerprint the sources of the project (%s)", e.getMessage()), e);
+        }
+        catch(DependencyResolutionRequiredException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to fingerprint the dependencies of the project (%s)", e.getMessage()), e);
+        }
+        return fingerprint.finish();
+    }
+
+    /**
+     * Digests the inputs of the template's outputs other than the results of its controller, for the output cache.
+     * Those include the class files of the controller, and of the adaptors and renderers, which decide how the results
+     * are read and formatted; the template's own inputs say nothing about them once the project has been cleaned.
+     */
+    private String getCacheInputs(Template template, File templateSource) throws MojoExecutionException
+    {
+        try
+        {
+            Fingerprint fingerprint = new Fingerprint().update(template.fingerprintWithoutController(this.getInputs(templateSource), this.project));
+            Controller controller = template.getController();
+            if(null != controller)
+            {
+                byte[] classFile = this.controllerClasspath.getClassFile(controller.getClassName());
+                fingerprint.update(controller.getClassName());
+                if(null != classFile)
+                {
+                    fingerprint.update(classFile);
+                }
+            }
+            this.groupConfiguration.updateClasses(fingerprint);
+            return fingerprint.finish();
+        }
+        catch(Exception e)
+        {
+            throw new MojoExecutionException(String.format("Unable to fingerprint the template %s (%s)", template.getName(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * @return the fingerprint of the inputs shared by the templates in the directory of the given template source.
+     */
+    private String getInputs(File templateSource) throws IOException
+    {
+        // a group file may import the other files in its directory
+        File templateDirectory = TemplateGroup.getRoot(templateSource);
+        String directoryDigest = this.directoryDigests.get(templateDirectory);
+        if(null == directoryDigest)
+        {
+            directoryDigest = new Fingerprint().updateDirectory(templateDirectory).finish();
+            this.directoryDigests.putIfAbsent(templateDirectory, directoryDigest);
+        }
+        return new Fingerprint()
+            .update(directoryDigest)
+            .update(this.getTemplateEncoding())
+            .update(this.outputCharset.name())
+            .update(GroupConfiguration.describe(this.accessorAdaptor, this.adaptors, this.renderers))
+            .finish();
+    }
+
+    private String getRenderReason(Template template, File outputFile, String fingerprint)
+    {
+        String previous = this.manifest.get(outputFile);
+        if(null == fingerprint)
+        {
+            return "the controller's source or class file could not be found in the project";
+        }
+        else if(null == previous)
+        {
+            return "it has not been rendered before";
+        }
+        else if(!previous.equals(fingerprint))
+        {
+            return "its inputs have changed";
+        }
+        else if(!template.isFanOut() && !template.isSharded() && !outputFile.isFile())
+        {
+            return "the output file is missing";
+        }
+        else if(template.isFanOut() || template.isSharded())
+        {
+            List<File> outputs = this.manifest.getOutputs(outputFile);
+            if(null == outputs)
+            {
+                return "its output files were not recorded";
+            }
+            for(File output : outputs)
+            {
+                if(!output.isFile())
+                {
+                    return String.format("the output file %s is missing", output);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    protected File getTemplateSource(Template template) throws MojoExecutionException
+    {
+        return template.getSource(this.project.getBasedir());
+    }
+}
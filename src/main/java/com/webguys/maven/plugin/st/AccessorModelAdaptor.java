@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.stringtemplate.v4.Interpreter;
+import org.stringtemplate.v4.ModelAdaptor;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.misc.STNoSuchPropertyException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads the properties of objects like ST's <code>ObjectModelAdaptor</code>, from a <code>getX()</code>,
+ * <code>isX()</code> or <code>hasX()</code> method or else a public field, but finds each accessor only once per class
+ * and property and calls it through a <code>MethodHandle</code> rather than by reflection.  The accessors are kept
+ * for as long as their class, and can be read from several threads at once, so one adaptor serves every group.
+ */
+public class AccessorModelAdaptor implements ModelAdaptor
+{
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * Stands for a property that the class does not have.
+     */
+    private static final MethodHandle MISSING = MethodHandles.identity(Object.class);
+
+    private final ClassValue<ConcurrentMap<String, MethodHandle>> accessors = new ClassValue<ConcurrentMap<String, MethodHandle>>()
+    {
+        @Override
+        protected ConcurrentMap<String, MethodHandle> computeValue(Class<?> type)
+        {
+            return new ConcurrentHashMap<String, MethodHandle>();
+        }
+    };
+
+    public Object getProperty(Interpreter interpreter, ST self, Object o, Object property, String propertyName) throws STNoSuchPropertyException
+    {
+        Class<?> type = o.getClass();
+        if(null == property)
+        {
+            throw noSuchProperty(type, propertyName);
+        }
+
+        ConcurrentMap<String, MethodHandle> accessors = this.accessors.get(type);
+        MethodHandle accessor = accessors.get(propertyName);
+        if(null == accessor)
+        {
+            accessor = findAccessor(type, propertyName);
+            accessors.putIfAbsent(propertyName, accessor);
+        }
+        if(MISSING == accessor)
+        {
+            throw noSuchProperty(type, propertyName);
+        }
+
+        try
+        {
+            return accessor.invokeExact(o);
+        }
+        catch(Throwable e)
+        {
+            // like ST's adaptor, a property that can not be read is reported as missing
+            throw noSuchProperty(type, propertyName);
+        }
+    }
+
+    private static MethodHandle findAccessor(Class<?> type, String propertyName)
+    {
+        if(propertyName.isEmpty())
+        {
+            return MISSING;
+        }
+
+        String suffix = Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+        try
+        {
+            for(String prefix : new String[] { "get", "is", "has" })
+            {
+                Method method = getMethod(type, prefix + suffix);
+                if(null != method)
+                {
+                    MethodHandle handle = lookup().unreflect(makeAccessible(method));
+                    return adapt(handle, Modifier.isStatic(method.getModifiers()));
+                }
+            }
+
+            Field field = type.getField(propertyName);
+            MethodHandle handle = lookup().unreflectGetter(makeAccessible(field));
+            return adapt(handle, Modifier.isStatic(field.getModifiers()));
+        }
+        catch(NoSuchFieldException e)
+        {
+            return MISSING;
+        }
+        catch(IllegalAccessException e)
+        {
+            return MISSING;
+        }
+    }
+
+    private static Method getMethod(Class<?> type, String name)
+    {
+        try
+        {
+            return type.getMethod(name);
+        }
+        catch(NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Public members of classes that are not public, such as the classes of controller results, can only be read when
+     * the access checks are turned off, as ST's own adaptor does.
+     */
+    private static <T extends AccessibleObject> T makeAccessible(T member)
+    {
+        try
+        {
+            member.setAccessible(true);
+        }
+        catch(RuntimeException e)
+        {
+            // the lookup will fail if the member really is inaccessible
+        }
+        return member;
+    }
+
+    private static MethodHandle adapt(MethodHandle handle, boolean isStatic)
+    {
+        if(isStatic)
+        {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return handle.asType(ACCESSOR_TYPE);
+    }
+
+    private static MethodHandles.Lookup lookup()
+    {
+        return MethodHandles.lookup();
+    }
+
+    private static STNoSuchPropertyException noSuchProperty(Class<?> type, String propertyName)
+    {
+        STNoSuchPropertyException e = new STNoSuchPropertyException();
+        e.propertyName = type.getName() + "." + propertyName;
+        return e;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Writes an output file through a temporary file in the same directory, and only replaces the target when the new
+ * content differs from what is already there.  Leaving unchanged files alone keeps their timestamps, so the compiler
+ * plugin does not consider their dependents stale.
+ */
+public class AtomicOutput
+{
+    private final File target;
+    private final Charset charset;
+    private final MessageDigest digest;
+
+    private Path temporaryFile;
+    private Writer writer;
+    private long size;
+
+    public AtomicOutput(File target, Charset charset)
+    {
+        this.target = target;
+        this.charset = charset;
+        this.digest = newDigest();
+    }
+
+    public Writer open() throws IOException
+    {
+        File directory = this.target.getAbsoluteFile().getParentFile();
+        if(!directory.exists() && !directory.mkdirs() && !directory.isDirectory())
+        {
+            throw new IOException(String.format("Unable to fully create the output directory: %s", directory));
+        }
+
+        // java.io creates the file with the default permissions, unlike Files.createTempFile()
+        this.temporaryFile = File.createTempFile("." + this.target.getName(), ".tmp", directory).toPath();
+        DigestOutputStream output = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(this.temporaryFile)), this.digest);
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, this.charset));
+        return this.writer;
+    }
+
+    /**
+     * Closes the output and moves it over the target if the content has changed.
+     *
+     * @return true if the target was written, false if it already had the same content.
+     */
+    public boolean commit() throws IOException
+    {
+        this.writer.close();
+        byte[] rendered = this.digest.digest();
+
+        Path targetPath = this.target.toPath();
+        this.size = Files.size(this.temporaryFile);
+        if(Files.isRegularFile(targetPath) && Files.size(targetPath) == this.size && Arrays.equals(rendered, digestOf(targetPath)))
+        {
+            this.discard();
+            return false;
+        }
+
+        try
+        {
+            Files.move(this.temporaryFile, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(this.temporaryFile, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes rendered, once the output has been committed.
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    public void discard()
+    {
+        try
+        {
+            if(null != this.writer)
+            {
+                this.writer.close();
+            }
+            if(null != this.temporaryFile)
+            {
+                Files.deleteIfExists(this.temporaryFile);
+            }
+        }
+        catch(IOException ignored)
+        {
+            // the temporary file is hidden, and the next build will try again
+        }
+    }
+
+    /**
+     * Puts a copy of the source file, or a hard link to it, in place of the target, unless the target already has the
+     * same content.  A copy is made when the file system can not link the files.
+     *
+     * @return true if the target was written, false if it already had the same content.
+     */
+    public static boolean replace(Path source, File target, boolean link) throws IOException
+    {
+        Path targetPath = target.toPath();
+        if(Files.isRegularFile(targetPath) && Files.size(targetPath) == Files.size(source) && Arrays.equals(digestOf(source), digestOf(targetPath)))
+        {
+            return false;
+        }
+
+        File directory = target.getAbsoluteFile().getParentFile();
+        if(!directory.exists() && !directory.mkdirs() && !directory.isDirectory())
+        {
+            throw new IOException(String.format("Unable to fully create the output directory: %s", directory));
+        }
+
+        Path temporaryFile = File.createTempFile("." + target.getName(), ".tmp", directory).toPath();
+        try
+        {
+            boolean linked = false;
+            if(link)
+            {
+                Files.delete(temporaryFile);
+                try
+                {
+                    Files.createLink(temporaryFile, source);
+                    linked = true;
+                }
+                catch(IOException e)
+                {
+                    // most likely on another file system
+                }
+                catch(UnsupportedOperationException e)
+                {
+                    // the file system has no hard links
+                }
+            }
+            if(!linked)
+            {
+                Files.copy(source, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            try
+            {
+                Files.move(temporaryFile, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch(AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporaryFile, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temporaryFile = null;
+        }
+        finally
+        {
+            if(null != temporaryFile)
+            {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+        return true;
+    }
+
+    static byte[] digestOf(Path path) throws IOException
+    {
+        MessageDigest digest = newDigest();
+        InputStream input = Files.newInputStream(path);
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int count;
+            while(-1 != (count = input.read(buffer)))
+            {
+                digest.update(buffer, 0, count);
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+        return digest.digest();
+    }
+
+    static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-1 is not supported by this JVM.", e);
+        }
+    }
+}
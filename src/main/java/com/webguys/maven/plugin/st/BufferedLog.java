@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A log that holds on to its messages until they are replayed to the real log.  This keeps the output of templates
+ * rendered on worker threads in the order the templates were configured.
+ */
+public class BufferedLog implements Log
+{
+    private enum Level
+    {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static class Entry
+    {
+        private final Level level;
+        private final CharSequence content;
+        private final Throwable error;
+
+        private Entry(Level level, CharSequence content, Throwable error)
+        {
+            this.level = level;
+            this.content = content;
+            this.error = error;
+        }
+    }
+
+    private final Log target;
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    public BufferedLog(Log target)
+    {
+        this.target = target;
+    }
+
+    public synchronized void replay()
+    {
+        for(Entry entry : this.entries)
+        {
+            switch(entry.level)
+            {
+                case DEBUG:
+                    if(null == entry.error)
+                    {
+                        this.target.debug(entry.content);
+                    }
+                    else
+                    {
+                        this.target.debug(entry.content, entry.error);
+                    }
+                    break;
+                case INFO:
+                    if(null == entry.error)
+                    {
+                        this.target.info(entry.content);
+                    }
+                    else
+                    {
+                        this.target.info(entry.content, entry.error);
+                    }
+                    break;
+                case WARN:
+                    if(null == entry.error)
+                    {
+                        this.target.warn(entry.content);
+                    }
+                    else
+                    {
+                        this.target.warn(entry.content, entry.error);
+                    }
+                    break;
+                case ERROR:
+                    if(null == entry.error)
+                    {
+                        this.target.error(entry.content);
+                    }
+                    else
+                    {
+                        this.target.error(entry.content, entry.error);
+                    }
+                    break;
+            }
+        }
+        this.entries.clear();
+    }
+
+    private synchronized void append(Level level, CharSequence content, Throwable error)
+    {
+        this.entries.add(new Entry(level, content, error));
+    }
+
+    public boolean isDebugEnabled()
+    {
+        return this.target.isDebugEnabled();
+    }
+
+    public void debug(CharSequence content)
+    {
+        this.append(Level.DEBUG, content, null);
+    }
+
+    public void debug(CharSequence content, Throwable error)
+    {
+        this.append(Level.DEBUG, content, error);
+    }
+
+    public void debug(Throwable error)
+    {
+        this.append(Level.DEBUG, null, error);
+    }
+
+    public boolean isInfoEnabled()
+    {
+        return this.target.isInfoEnabled();
+    }
+
+    public void info(CharSequence content)
+    {
+        this.append(Level.INFO, content, null);
+    }
+
+    public void info(CharSequence content, Throwable error)
+    {
+        this.append(Level.INFO, content, error);
+    }
+
+    public void info(Throwable error)
+    {
+        this.append(Level.INFO, null, error);
+    }
+
+    public boolean isWarnEnabled()
+    {
+        return this.target.isWarnEnabled();
+    }
+
+    public void warn(CharSequence content)
+    {
+        this.append(Level.WARN, content, null);
+    }
+
+    public void warn(CharSequence content, Throwable error)
+    {
+        this.append(Level.WARN, content, error);
+    }
+
+    public void warn(Throwable error)
+    {
+        this.append(Level.WARN, null, error);
+    }
+
+    public boolean isErrorEnabled()
+    {
+        return this.target.isErrorEnabled();
+    }
+
+    public void error(CharSequence content)
+    {
+        this.append(Level.ERROR, content, null);
+    }
+
+    public void error(CharSequence content, Throwable error)
+    {
+        this.append(Level.ERROR, content, error);
+    }
+
+    public void error(Throwable error)
+    {
+        this.append(Level.ERROR, null, error);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that the output files are up to date with their templates, without writing them.  Each template is rendered,
+ * concurrently, to a digest that is compared with its output file, and the goal fails with the list of the files that
+ * are missing or differ.  This suits projects that commit their generated sources.
+ * <p>
+ * Controllers that are not on the classpath are compiled in memory, whatever the <code>controllerCompiler</code>, so
+ * that checking writes no classes to the project's output directory.
+ *
+ * @goal check
+ * @requiresDependencyResolution compile
+ * @threadSafe
+ */
+public class CheckMojo extends AbstractStringTemplateMojo
+{
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        List<File> staleOutputs;
+        this.open();
+        try
+        {
+            this.render(this.getTemplates());
+            staleOutputs = this.getStaleOutputs();
+        }
+        finally
+        {
+            this.close();
+        }
+
+        if(!staleOutputs.isEmpty())
+        {
+            Collections.sort(staleOutputs);
+            StringBuilder message = new StringBuilder(String.format("%d output files are not up to date with their templates; run the render goal to update them:",
+                staleOutputs.size()));
+            for(File output : staleOutputs)
+            {
+                message.append(String.format("%n    %s", output));
+            }
+            throw new MojoFailureException(message.toString());
+        }
+    }
+
+    @Override
+    protected boolean isChecking()
+    {
+        return true;
+    }
+}
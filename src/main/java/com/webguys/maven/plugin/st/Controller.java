@@ -24,33 +24,37 @@
 
 package com.webguys.maven.plugin.st;
 
-import org.apache.maven.ProjectDependenciesResolver;
-import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
-import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
-import org.sonatype.aether.util.artifact.JavaScopes;
 import org.stringtemplate.v4.ST;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.BaseStream;
 
 import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
 
 public class Controller
 {
+    /**
+     * The compiler plugin writes to the project's output directory, so only one controller is compiled into each
+     * directory at a time, even when the modules of a build run in parallel.
+     */
+    private static final ConcurrentMap<String, Object> COMPILATION_LOCKS = new ConcurrentHashMap<String, Object>();
+
     /**
      * The name of the class to instantiate.
      *
@@ -82,53 +86,233 @@ public class Controller
     private boolean compile = true;
 
     /**
-     * @parameter default-value="1.6"
+     * @parameter default-value="1.7"
      */
-    private String sourceVersion = "1.6";
+    private String sourceVersion = "1.7";
 
     /**
-     * @parameter default-value="1.6"
+     * @parameter default-value="1.7"
      */
-    private String targetVersion = "1.6";
+    private String targetVersion = "1.7";
 
     /**
      * @parameter default-value="3.0"
      */
     private String compilerVersion = "3.0";
 
-    private Object controllerInstance = null;
+    public String getClassName()
+    {
+        return className;
+    }
+
+    public boolean isCompile()
+    {
+        return compile;
+    }
+
+    public String getSourceVersion()
+    {
+        return sourceVersion;
+    }
 
-    public void invoke(ST st, ExecutionEnvironment executionEnvironment, ProjectDependenciesResolver dependenciesResolver, Log log) throws MojoExecutionException
+    public String getTargetVersion()
     {
+        return targetVersion;
+    }
+
+    /**
+     * Invokes the controller method.
+     *
+     * @return the attributes for the template, or an Iterable, Iterator or Stream of them when the template's target is
+     *         a pattern.
+     */
+    public Object invoke(ExecutionEnvironment executionEnvironment, ControllerClasspath classpath, Log log, Timings timings) throws MojoExecutionException
+    {
+        Object results;
         try
         {
-            Class controllerClass = this.findControllerClass(dependenciesResolver, executionEnvironment, log);
+            Class controllerClass = this.findControllerClass(classpath, executionEnvironment, log, timings);
             Method method = this.getMethod(controllerClass);
 
-            this.applyProperties(controllerClass, this.properties, log);
-            Object results = this.invoke(controllerClass, method, log);
-
-            this.applyResults(st, results);
+            long start = timings.start();
+            try
+            {
+                // each invocation has an instance of its own, since templates rendered in parallel share the controller
+                Object instance = Modifier.isStatic(method.getModifiers()) ? null : controllerClass.newInstance();
+                this.applyProperties(controllerClass, instance, this.properties, log);
+                results = this.invoke(controllerClass, instance, method, log);
+            }
+            finally
+            {
+                timings.stop(Timings.Phase.CONTROLLER_INVOCATION, start);
+            }
         }
         catch(Exception e)
         {
             throw new MojoExecutionException(String.format("Unable to invoke controller: %s (%s)", this.className, e.getMessage()), e);
         }
+
+        if(null == results)
+        {
+            throw new MojoExecutionException(String.format("The result invoking %s.%s was null.", this.className, this.method));
+        }
+        return results;
     }
 
-    private Class findControllerClass(ProjectDependenciesResolver dependenciesResolver, ExecutionEnvironment executionEnvironment, Log log)
+    /**
+     * Loads the controller class, compiling it first if it is necessary.
+     */
+    public void load(ExecutionEnvironment executionEnvironment, ControllerClasspath classpath, Log log, Timings timings) throws MojoExecutionException
+    {
+        try
+        {
+            this.findControllerClass(classpath, executionEnvironment, log, timings);
+        }
+        catch(MojoExecutionException e)
+        {
+            throw e;
+        }
+        catch(Exception e)
+        {
+            throw new MojoExecutionException(String.format("Unable to load controller: %s (%s)", this.className, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * @return a key that is the same for every controller with the same class, method and properties, and so the same
+     *         results.
+     */
+    public String getResultsKey()
+    {
+        return new Fingerprint().update(this.className).update(this.method).update(this.properties).finish();
+    }
+
+    /**
+     * Compiles the controller if it is necessary, and digests its class file and configuration.
+     *
+     * @return a key that changes whenever the class file or the properties of the controller change, or null if the
+     *         class file can not be read.
+     */
+    public String getSnapshotKey(ExecutionEnvironment executionEnvironment, ControllerClasspath classpath, Log log, Timings timings) throws MojoExecutionException
+    {
+        this.load(executionEnvironment, classpath, log, timings);
+
+        byte[] classFile;
+        try
+        {
+            classFile = classpath.getClassFile(this.className);
+        }
+        catch(Exception e)
+        {
+            throw new MojoExecutionException(String.format("Unable to read the class file of controller: %s (%s)", this.className, e.getMessage()), e);
+        }
+
+        if(null == classFile)
+        {
+            return null;
+        }
+        return new Fingerprint().update(this.getResultsKey()).update(classFile).finish();
+    }
+
+    /**
+     * Adds the configuration of this controller and the contents of its source or class file to the fingerprint.
+     *
+     * @return false if neither the source nor the class file of the controller can be found in the project.
+     */
+    public boolean fingerprint(Fingerprint fingerprint, MavenProject project) throws IOException
+    {
+        fingerprint.update(this.className)
+            .update(this.method)
+            .update(this.properties)
+            .update(String.valueOf(this.compile))
+            .update(this.sourceVersion)
+            .update(this.targetVersion)
+            .update(this.compilerVersion);
+
+        File sourceFile = this.findSourceFile(project);
+        if(null != sourceFile)
+        {
+            fingerprint.updateFile(sourceFile);
+            return true;
+        }
+
+        File classFile = new File(project.getBuild().getOutputDirectory(), this.className.replace('.', File.separatorChar) + ".class");
+        if(classFile.isFile())
+        {
+            fingerprint.updateFile(classFile);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the source file of this controller in the project's compile source roots, or null if there is none.
+     */
+    public File findSourceFile(MavenProject project)
+    {
+        String path = this.className.replace('.', File.separatorChar) + ".java";
+        for(String sourceRoot : (List<String>)project.getCompileSourceRoots())
+        {
+            File sourceFile = new File(sourceRoot, path);
+            if(sourceFile.isFile())
+            {
+                return sourceFile;
+            }
+        }
+        return null;
+    }
+
+    public boolean isLoadable(ControllerClasspath classpath, Timings timings) throws MojoExecutionException
+    {
+        try
+        {
+            classpath.getElements(timings);
+            this.loadController(classpath, timings);
+            return true;
+        }
+        catch(ClassNotFoundException e)
+        {
+            return false;
+        }
+        catch(Exception e)
+        {
+            throw new MojoExecutionException(String.format("Unable to build the classpath for controller: %s (%s)", this.className, e.getMessage()), e);
+        }
+    }
+
+    private Class findControllerClass(ControllerClasspath classpath, ExecutionEnvironment executionEnvironment, Log log, Timings timings)
         throws MojoExecutionException, ClassNotFoundException, MalformedURLException, ArtifactResolutionException, ArtifactNotFoundException
     {
+        classpath.getElements(timings);
         try
         {
-            return this.loadController(executionEnvironment.getMavenProject(), executionEnvironment.getMavenSession(), dependenciesResolver);
+            return this.loadController(classpath, timings);
         }
         catch(ClassNotFoundException e)
         {
             if(this.compile)
             {
-                log.info(String.format("Unable to find the class: %s.  Attempting to compile it...", this.className));
-                return this.compileAndLoadController(log, dependenciesResolver, executionEnvironment);
+                synchronized(getCompilationLock(executionEnvironment.getMavenProject()))
+                {
+                    try
+                    {
+                        return this.loadController(classpath, timings);
+                    }
+                    catch(ClassNotFoundException notCompiledYet)
+                    {
+                        log.info(String.format("Unable to find the class: %s.  Attempting to compile it...", this.className));
+                        long start = timings.start();
+                        try
+                        {
+                            return this.compileAndLoadController(log, classpath, executionEnvironment);
+                        }
+                        finally
+                        {
+                            timings.stop(Timings.Phase.CONTROLLER_COMPILATION, start);
+                        }
+                    }
+                }
             }
             else
             {
@@ -137,23 +321,28 @@ public class Controller
         }
     }
 
-    private Class compileAndLoadController(Log log, ProjectDependenciesResolver dependenciesResolver, ExecutionEnvironment executionEnvironment)
-        throws MojoExecutionException, ClassNotFoundException, MalformedURLException, ArtifactResolutionException, ArtifactNotFoundException
+    private static Object getCompilationLock(MavenProject project)
     {
-        MavenProject project = executionEnvironment.getMavenProject();
-
-        Set<Artifact> originalArtifacts = this.configureArtifacts(project);
-        this.executeCompilerPlugin(executionEnvironment, log);
-        Class result = this.loadController(project, executionEnvironment.getMavenSession(), dependenciesResolver);
-        project.setArtifacts(originalArtifacts);
-        return result;
+        String outputDirectory = new File(project.getBuild().getOutputDirectory()).getAbsolutePath();
+        Object lock = COMPILATION_LOCKS.get(outputDirectory);
+        if(null == lock)
+        {
+            Object created = new Object();
+            lock = COMPILATION_LOCKS.putIfAbsent(outputDirectory, created);
+            lock = null == lock ? created : lock;
+        }
+        return lock;
     }
 
-    private Set<Artifact> configureArtifacts(MavenProject project)
+    /**
+     * The goals require the project's dependencies to be resolved, so the compiler plugin finds them in the project's
+     * artifacts without changing the project.
+     */
+    private Class compileAndLoadController(Log log, ControllerClasspath classpath, ExecutionEnvironment executionEnvironment)
+        throws MojoExecutionException, ClassNotFoundException, MalformedURLException, ArtifactResolutionException, ArtifactNotFoundException
     {
-        Set<Artifact> originalArtifacts = project.getArtifacts();
-        project.setArtifacts(project.getDependencyArtifacts());
-        return originalArtifacts;
+        this.executeCompilerPlugin(executionEnvironment, log);
+        return this.loadController(classpath);
     }
 
     private void executeCompilerPlugin(ExecutionEnvironment executionEnvironment, Log log) throws MojoExecutionException
@@ -177,37 +366,40 @@ public class Controller
         );
     }
 
-    private Class loadController(MavenProject project, MavenSession session, ProjectDependenciesResolver dependenciesResolver)
+    private Class loadController(ControllerClasspath classpath)
         throws MalformedURLException, ClassNotFoundException, ArtifactResolutionException, ArtifactNotFoundException
     {
-        ArrayList<String> scopes = new ArrayList<String>(1);
-        scopes.add(JavaScopes.RUNTIME);
-        Set<Artifact> artifacts = dependenciesResolver.resolve(project, scopes, session);
+        return classpath.getClassLoader().loadClass(this.className);
+    }
 
-        ArrayList<URL> urls = new ArrayList<URL>();
-        urls.add(new File(project.getBuild().getOutputDirectory()).getAbsoluteFile().toURI().toURL());
-        for(Artifact artifact : artifacts)
+    private Class loadController(ControllerClasspath classpath, Timings timings)
+        throws MalformedURLException, ClassNotFoundException, ArtifactResolutionException, ArtifactNotFoundException
+    {
+        long start = timings.start();
+        try
         {
-            urls.add(artifact.getFile().getAbsoluteFile().toURI().toURL());
+            return this.loadController(classpath);
+        }
+        finally
+        {
+            timings.stop(Timings.Phase.CLASS_LOADING, start);
         }
-
-        ClassLoader loader = URLClassLoader.newInstance(urls.toArray(new URL[urls.size()]), this.getClass().getClassLoader());
-        return loader.loadClass(this.className);
     }
 
     private Method getMethod(Class controllerClass) throws NoSuchMethodException, MojoExecutionException
     {
         Method method = controllerClass.getMethod(this.method);
 
-        if(!method.getReturnType().isAssignableFrom(Map.class))
+        Class returnType = method.getReturnType();
+        if(!returnType.isAssignableFrom(Map.class) && !Iterable.class.isAssignableFrom(returnType) && !Iterator.class.isAssignableFrom(returnType) && !BaseStream.class.isAssignableFrom(returnType))
         {
-            throw new MojoExecutionException(String.format("The return type of the method %s was not of type Map<String, Object>", this.method));
+            throw new MojoExecutionException(String.format("The return type of the method %s was not of type Map<String, Object>, or an Iterable, Iterator or Stream of them", this.method));
         }
-        
+
         return method;
     }
 
-    private void applyProperties(Class controllerClass, Map<String, String> properties, Log log)
+    private void applyProperties(Class controllerClass, Object instance, Map<String, String> properties, Log log)
             throws IllegalAccessException, InvocationTargetException, InstantiationException
     {
         if(null == properties || properties.isEmpty())
@@ -226,32 +418,42 @@ public class Controller
         }
         if(null != setProperties)
         {
-            this.invoke(controllerClass, setProperties, log, properties);
-        }
-    }
-
-    private Object invoke(Class controllerClass, Method method, Log log, Object ... args)
-        throws InstantiationException, IllegalAccessException, InvocationTargetException
-    {
-        Object controller = null;
-        if(!Modifier.isStatic(method.getModifiers()))
-        {
-            if (null == this.controllerInstance)
+            if(null == instance && !Modifier.isStatic(setProperties.getModifiers()))
             {
-                this.controllerInstance = controllerClass.newInstance();
+                instance = controllerClass.newInstance();
             }
-            controller = this.controllerInstance;
+            this.invoke(controllerClass, instance, setProperties, log, properties);
         }
+    }
 
+    /**
+     * @param instance the controller, or null if the method is static.
+     */
+    private Object invoke(Class controllerClass, Object instance, Method method, Log log, Object ... args) throws IllegalAccessException, InvocationTargetException
+    {
         log.info(String.format("Invoking controller method: %s.%s()", controllerClass.getName(), method.getName()));
-        return method.invoke(controller, args);
+        return method.invoke(Modifier.isStatic(method.getModifiers()) ? null : instance, args);
     }
 
-    private void applyResults(ST st, Object result) throws MojoExecutionException
+    @Override
+    public String toString()
     {
-        if(null == result)
+        return String.format("%s.%s()", this.className, this.method);
+    }
+
+    /**
+     * Adds the entries of a result map to the template as attributes.  Streams are added as iterators, so that they are
+     * read as the template is rendered, and can be tested with <code>&lt;if(...)&gt;</code> before they are.  Suppliers
+     * are added as they are, and the {@link StreamingInterpreter} calls them if the template uses them.
+     *
+     * @return the number of attributes added.
+     */
+    public int applyResults(ST st, Object result) throws MojoExecutionException
+    {
+        if(!(result instanceof Map))
         {
-            throw new MojoExecutionException(String.format("The result invoking %s.%s was null.", this.className, this.method));
+            String msg = String.format("The %s.%s results were of type %s instead of a Map.  Use a target pattern to render one file for each result.", this.className, this.method, result.getClass().getName());
+            throw new MojoExecutionException(msg);
         }
         Map<Object, Object> attributes = (Map<Object, Object>) result;
 
@@ -263,7 +465,32 @@ public class Controller
                 String msg = String.format("A non-String key of type %s was found in the %s.%s results.", key.getClass().getName(), this.className, this.method);
                 throw new MojoExecutionException(msg);
             }
-            st.add((String)key, entry.getValue());
+            Object value = entry.getValue();
+            if(value instanceof BaseStream)
+            {
+                value = new StreamIterator((BaseStream<?, ?>)value);
+            }
+            st.add((String)key, value);
+        }
+        return attributes.size();
+    }
+
+    /**
+     * Closes the streams in a result map, including any that the template did not read to the end.
+     */
+    public void closeResults(Object result)
+    {
+        if(!(result instanceof Map))
+        {
+            return;
+        }
+
+        for(Object value : ((Map<?, ?>)result).values())
+        {
+            if(value instanceof BaseStream)
+            {
+                ((BaseStream<?, ?>)value).close();
+            }
         }
     }
 }
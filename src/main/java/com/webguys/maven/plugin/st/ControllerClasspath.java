@@ -0,0 +1,284 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.ProjectDependenciesResolver;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.sonatype.aether.util.artifact.JavaScopes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The class loader used to load controllers, built from the project's output directory and runtime dependencies.  The
+ * dependencies are resolved the first time a controller is loaded, and the class loader is shared by every controller
+ * until the classpath is closed at the end of the execution.  Controllers compiled in memory are defined by a child of
+ * that class loader.
+ * <p>
+ * When a {@link SharedCache} is given, the dependencies are loaded by a class loader that is shared with the other
+ * executions in the JVM whose dependencies are the same files, unchanged, and only the output directory is loaded by
+ * a class loader of this execution.
+ */
+public class ControllerClasspath implements Closeable
+{
+    private static class CompiledClassLoader extends ClassLoader
+    {
+        private final Map<String, byte[]> classes;
+
+        private CompiledClassLoader(ClassLoader parent, Map<String, byte[]> classes)
+        {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException
+        {
+            byte[] bytes = this.classes.get(name);
+            if(null == bytes)
+            {
+                throw new ClassNotFoundException(name);
+            }
+            return this.defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private final MavenProject project;
+    private final MavenSession session;
+    private final ProjectDependenciesResolver dependenciesResolver;
+    private final SharedCache<URLClassLoader> sharedClassLoaders;
+
+    private List<File> elements;
+    private URLClassLoader dependencyClassLoader;
+    private URLClassLoader classLoader;
+    private ClassLoader compiledClassLoader;
+    private Map<String, byte[]> compiledClasses = Collections.emptyMap();
+
+    public ControllerClasspath(MavenProject project, MavenSession session, ProjectDependenciesResolver dependenciesResolver)
+    {
+        this(project, session, dependenciesResolver, null);
+    }
+
+    /**
+     * @param sharedClassLoaders the class loaders of dependencies shared with other executions, or null to load the
+     *                           dependencies for this execution only.
+     */
+    public ControllerClasspath(MavenProject project, MavenSession session, ProjectDependenciesResolver dependenciesResolver,
+        SharedCache<URLClassLoader> sharedClassLoaders)
+    {
+        this.project = project;
+        this.session = session;
+        this.dependenciesResolver = dependenciesResolver;
+        this.sharedClassLoaders = sharedClassLoaders;
+    }
+
+    public synchronized ClassLoader getClassLoader() throws MalformedURLException, ArtifactResolutionException, ArtifactNotFoundException
+    {
+        if(null != this.compiledClassLoader)
+        {
+            return this.compiledClassLoader;
+        }
+        if(null == this.classLoader)
+        {
+            URL[] urls = this.getURLs();
+            if(null == this.sharedClassLoaders)
+            {
+                this.classLoader = new URLClassLoader(urls, this.getClass().getClassLoader());
+            }
+            else
+            {
+                this.dependencyClassLoader = this.acquireDependencyClassLoader(Arrays.copyOfRange(urls, 1, urls.length));
+                this.classLoader = new URLClassLoader(new URL[] { urls[0] }, this.dependencyClassLoader);
+            }
+        }
+        return this.classLoader;
+    }
+
+    /**
+     * The project's output directory followed by its runtime dependencies.
+     */
+    public synchronized List<File> getElements() throws ArtifactResolutionException, ArtifactNotFoundException
+    {
+        if(null == this.elements)
+        {
+            List<String> scopes = Collections.singletonList(JavaScopes.RUNTIME);
+            Set<Artifact> artifacts = this.dependenciesResolver.resolve(this.project, scopes, this.session);
+
+            List<File> result = new ArrayList<File>(artifacts.size() + 1);
+            result.add(new File(this.project.getBuild().getOutputDirectory()).getAbsoluteFile());
+            for(Artifact artifact : artifacts)
+            {
+                result.add(artifact.getFile().getAbsoluteFile());
+            }
+            this.elements = result;
+        }
+        return this.elements;
+    }
+
+    /**
+     * Gets the elements of the classpath, adding the time spent resolving the dependencies to the timings.
+     */
+    public List<File> getElements(Timings timings) throws ArtifactResolutionException, ArtifactNotFoundException
+    {
+        long start = timings.start();
+        try
+        {
+            return this.getElements();
+        }
+        finally
+        {
+            timings.stop(Timings.Phase.DEPENDENCY_RESOLUTION, start);
+        }
+    }
+
+    /**
+     * Makes classes that were compiled in memory available to the controllers.
+     */
+    public synchronized void addCompiledClasses(Map<String, byte[]> classes) throws MalformedURLException, ArtifactResolutionException, ArtifactNotFoundException
+    {
+        if(classes.isEmpty())
+        {
+            return;
+        }
+
+        ClassLoader parent = this.getClassLoader();
+        this.compiledClasses = new HashMap<String, byte[]>(classes);
+        this.compiledClassLoader = new CompiledClassLoader(parent, this.compiledClasses);
+    }
+
+    /**
+     * @return the contents of the class file of the named class, whether it was compiled in memory or is on the
+     *         classpath, or null if there is no such class.
+     */
+    public synchronized byte[] getClassFile(String className) throws IOException, ArtifactResolutionException, ArtifactNotFoundException
+    {
+        byte[] bytes = this.compiledClasses.get(className);
+        if(null != bytes)
+        {
+            return bytes;
+        }
+
+        InputStream input = this.getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+        if(null == input)
+        {
+            return null;
+        }
+        try
+        {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while(-1 != (count = input.read(buffer)))
+            {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    public synchronized void close() throws IOException
+    {
+        this.compiledClassLoader = null;
+        this.compiledClasses = Collections.emptyMap();
+        if(null != this.classLoader)
+        {
+            this.classLoader.close();
+            this.classLoader = null;
+        }
+        if(null != this.dependencyClassLoader)
+        {
+            this.sharedClassLoaders.release(this.dependencyClassLoader);
+            this.dependencyClassLoader = null;
+        }
+    }
+
+    private URLClassLoader acquireDependencyClassLoader(final URL[] urls) throws ArtifactResolutionException, ArtifactNotFoundException
+    {
+        List<File> dependencies = this.getElements();
+        dependencies = dependencies.subList(1, dependencies.size());
+
+        Fingerprint stamp = new Fingerprint();
+        for(File dependency : dependencies)
+        {
+            stamp.updateStamp(dependency);
+        }
+
+        final ClassLoader parent = this.getClass().getClassLoader();
+        return this.sharedClassLoaders.acquire(dependencies.toString(), stamp.finish(), new SharedCache.Factory<URLClassLoader>()
+        {
+            public URLClassLoader create()
+            {
+                return new URLClassLoader(urls, parent);
+            }
+        });
+    }
+
+    private URL[] getURLs() throws MalformedURLException, ArtifactResolutionException, ArtifactNotFoundException
+    {
+        List<File> files = this.getElements();
+        List<URL> urls = new ArrayList<URL>(files.size());
+        urls.add(this.getOutputDirectoryURL());
+        for(File file : files.subList(1, files.size()))
+        {
+            urls.add(file.toURI().toURL());
+        }
+        return urls.toArray(new URL[urls.size()]);
+    }
+
+    /**
+     * The output directory may not exist until a controller has been compiled, and a URL without a trailing slash would
+     * be treated as a jar file.
+     */
+    private URL getOutputDirectoryURL() throws MalformedURLException
+    {
+        String url = new File(this.project.getBuild().getOutputDirectory()).getAbsoluteFile().toURI().toString();
+        if(!url.endsWith("/"))
+        {
+            url += "/";
+        }
+        return new URL(url);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles controller sources with the system Java compiler, keeping the class files in memory.
+ */
+public class ControllerCompiler
+{
+    private static class ClassOutput extends SimpleJavaFileObject
+    {
+        private final String className;
+        private final Map<String, byte[]> classes;
+
+        private ClassOutput(String className, Map<String, byte[]> classes)
+        {
+            super(URI.create("memory:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+            this.classes = classes;
+        }
+
+        @Override
+        public OutputStream openOutputStream()
+        {
+            return new ByteArrayOutputStream()
+            {
+                @Override
+                public void close() throws IOException
+                {
+                    super.close();
+                    classes.put(className, this.toByteArray());
+                }
+            };
+        }
+    }
+
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+    {
+        private final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+
+        private MemoryFileManager(StandardJavaFileManager fileManager)
+        {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling)
+            throws IOException
+        {
+            if(StandardLocation.CLASS_OUTPUT == location && JavaFileObject.Kind.CLASS == kind)
+            {
+                return new ClassOutput(className, this.classes);
+            }
+            return super.getJavaFileForOutput(location, className, kind, sibling);
+        }
+    }
+
+    private final List<File> classpath;
+    private final List<String> sourceRoots;
+
+    public ControllerCompiler(List<File> classpath, List<String> sourceRoots)
+    {
+        this.classpath = classpath;
+        this.sourceRoots = sourceRoots;
+    }
+
+    /**
+     * Compiles the given source files in a single pass.  Any other project sources they refer to are compiled as well.
+     *
+     * @return the bytes of every compiled class, by binary class name.
+     */
+    public Map<String, byte[]> compile(Collection<File> sourceFiles, String sourceVersion, String targetVersion, Log log)
+        throws MojoExecutionException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if(null == compiler)
+        {
+            throw new MojoExecutionException("No Java compiler is available; Maven must be run with a JDK to compile controllers.");
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        MemoryFileManager fileManager = new MemoryFileManager(standardFileManager);
+        try
+        {
+            List<String> options = new ArrayList<String>();
+            options.add("-classpath");
+            options.add(join(this.classpath));
+            options.add("-sourcepath");
+            options.add(join(this.sourceRoots));
+            options.add("-source");
+            options.add(sourceVersion);
+            options.add("-target");
+            options.add(targetVersion);
+            options.add("-proc:none");
+
+            Iterable<? extends JavaFileObject> units = standardFileManager.getJavaFileObjectsFromFiles(sourceFiles);
+            boolean success = compiler.getTask(null, fileManager, diagnostics, options, null, units).call();
+
+            StringBuilder errors = new StringBuilder();
+            for(Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+            {
+                if(Diagnostic.Kind.ERROR == diagnostic.getKind())
+                {
+                    errors.append(String.format("%n%s", diagnostic));
+                }
+                else
+                {
+                    log.debug(diagnostic.toString());
+                }
+            }
+
+            if(!success)
+            {
+                throw new MojoExecutionException(String.format("Unable to compile the controllers: %s", errors));
+            }
+            return fileManager.classes;
+        }
+        finally
+        {
+            try
+            {
+                fileManager.close();
+            }
+            catch(IOException ignored)
+            {
+                // nothing was written to disk
+            }
+        }
+    }
+
+    private static String join(List<?> elements)
+    {
+        StringBuilder result = new StringBuilder();
+        for(Object element : elements)
+        {
+            if(result.length() > 0)
+            {
+                result.append(File.pathSeparator);
+            }
+            result.append(element);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.BaseStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The results of the controllers invoked during an execution.  Templates whose controllers have the same class, method
+ * and properties share one invocation of the controller.  The results can also be kept in snapshots in the work
+ * directory, which later builds reuse until the class file or the properties of the controller change.  Controllers
+ * can be given a timeout, after which the template fails.
+ * <p>
+ * Shared results are released once the last template expected to use them has them, unless they are retained for
+ * later renders.
+ * <p>
+ * Results that can only be read once, because they are or contain an <code>Iterator</code> or a <code>Stream</code>,
+ * are never shared.
+ */
+public class ControllerResults
+{
+    /**
+     * Resolves the classes of a snapshot with the controller class loader, since the results may contain classes of
+     * the project.
+     */
+    private static class SnapshotInputStream extends ObjectInputStream
+    {
+        private final ClassLoader classLoader;
+
+        private SnapshotInputStream(InputStream input, ClassLoader classLoader) throws IOException
+        {
+            super(input);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException
+        {
+            try
+            {
+                return Class.forName(description.getName(), false, this.classLoader);
+            }
+            catch(ClassNotFoundException e)
+            {
+                return super.resolveClass(description);
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Object> results = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<String, AtomicInteger> expected = new ConcurrentHashMap<String, AtomicInteger>();
+    private final File snapshotDirectory;
+    private final int timeout;
+    private final boolean retain;
+    private ExecutorService executor;
+
+    /**
+     * @param snapshotDirectory the directory to keep snapshots in, or null if results are only shared within the
+     *                          execution.
+     * @param timeout           the number of seconds a controller may run, or zero if there is no limit.
+     * @param retain            should shared results be kept until the execution ends, rather than released after the
+     *                          last template expected to use them?
+     */
+    public ControllerResults(File snapshotDirectory, int timeout, boolean retain)
+    {
+        this.snapshotDirectory = snapshotDirectory;
+        this.timeout = timeout;
+        this.retain = retain;
+    }
+
+    /**
+     * Records that a template will get the results of the controller, so that they are kept until every template
+     * expected to use them has them.
+     */
+    public void expect(Controller controller)
+    {
+        String key = controller.getResultsKey();
+        AtomicInteger count = this.expected.get(key);
+        if(null == count)
+        {
+            AtomicInteger created = new AtomicInteger();
+            count = this.expected.putIfAbsent(key, created);
+            count = null == count ? created : count;
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * @return the results of the controller, invoking it unless another template or a snapshot already provided them.
+     */
+    public Object get(Controller controller, ExecutionEnvironment executionEnvironment, ControllerClasspath classpath, Log log, Timings timings)
+        throws MojoExecutionException
+    {
+        String key = controller.getResultsKey();
+        Object lock = this.locks.get(key);
+        if(null == lock)
+        {
+            Object created = new Object();
+            lock = this.locks.putIfAbsent(key, created);
+            lock = null == lock ? created : lock;
+        }
+
+        synchronized(lock)
+        {
+            boolean shared = this.isShared(key);
+            Object result = shared ? this.results.get(key) : this.results.remove(key);
+            if(null != result)
+            {
+                log.info(String.format("Reusing the results of %s.", controller));
+                return result;
+            }
+
+            String snapshotKey = null;
+            if(null != this.snapshotDirectory)
+            {
+                snapshotKey = controller.getSnapshotKey(executionEnvironment, classpath, log, timings);
+                result = this.readSnapshot(key, snapshotKey, classpath, log);
+                if(null != result)
+                {
+                    log.info(String.format("Using the snapshot of the results of %s.", controller));
+                }
+            }
+
+            if(null == result)
+            {
+                result = this.invoke(controller, executionEnvironment, classpath, log, timings);
+                if(null != snapshotKey && isReusable(result))
+                {
+                    this.writeSnapshot(key, snapshotKey, result, log);
+                }
+            }
+
+            if(shared && isReusable(result))
+            {
+                this.results.put(key, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Counts a use of the results of the controller with the given key.
+     *
+     * @return true if the results should be kept for later uses.
+     */
+    private boolean isShared(String key)
+    {
+        if(this.retain)
+        {
+            return true;
+        }
+
+        AtomicInteger count = this.expected.get(key);
+        return null != count && count.decrementAndGet() > 0;
+    }
+
+    /**
+     * Stops any controller that is still running after its timeout.
+     */
+    public synchronized void close()
+    {
+        if(null != this.executor)
+        {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Invokes the controller, giving up after the timeout if there is one.  The controller is compiled and loaded
+     * before the timeout starts.
+     */
+    private Object invoke(final Controller controller, final ExecutionEnvironment executionEnvironment, final ControllerClasspath classpath, final Log log, final Timings timings)
+        throws MojoExecutionException
+    {
+        if(this.timeout <= 0)
+        {
+            return controller.invoke(executionEnvironment, classpath, log, timings);
+        }
+
+        controller.load(executionEnvironment, classpath, log, timings);
+        Future<Object> invocation = this.getExecutor().submit(new Callable<Object>()
+        {
+            public Object call() throws Exception
+            {
+                return controller.invoke(executionEnvironment, classpath, log, timings);
+            }
+        });
+
+        try
+        {
+            return invocation.get(this.timeout, TimeUnit.SECONDS);
+        }
+        catch(TimeoutException e)
+        {
+            invocation.cancel(true);
+            throw new MojoExecutionException(String.format("The controller %s did not finish within %d seconds.", controller, this.timeout));
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof MojoExecutionException)
+            {
+                throw (MojoExecutionException)e.getCause();
+            }
+            throw new MojoExecutionException(String.format("Unable to invoke controller: %s (%s)", controller, e.getCause().getMessage()), e.getCause());
+        }
+        catch(InterruptedException e)
+        {
+            invocation.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(String.format("Interrupted while waiting for controller %s.", controller), e);
+        }
+    }
+
+    /**
+     * Controllers that are invoked with a timeout run on daemon threads, so one that never finishes does not keep the
+     * build from exiting.
+     */
+    private synchronized ExecutorService getExecutor()
+    {
+        if(null == this.executor)
+        {
+            this.executor = Executors.newCachedThreadPool(new ThreadFactory()
+            {
+                private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = this.threadFactory.newThread(runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.executor;
+    }
+
+    /**
+     * Are the results a map, or a collection of maps, that can be read more than once?
+     */
+    private static boolean isReusable(Object result)
+    {
+        if(result instanceof Map)
+        {
+            for(Object value : ((Map<?, ?>)result).values())
+            {
+                if(value instanceof Iterator || value instanceof BaseStream)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        else if(result instanceof Collection)
+        {
+            for(Object item : (Collection<?>)result)
+            {
+                if(!isReusable(item))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private File getSnapshotFile(String key)
+    {
+        return new File(this.snapshotDirectory, key + ".ser.z");
+    }
+
+    private Object readSnapshot(String key, String snapshotKey, ControllerClasspath classpath, Log log)
+    {
+        File file = this.getSnapshotFile(key);
+        if(null == snapshotKey || !file.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            InputStream input = new BufferedInputStream(new InflaterInputStream(new FileInputStream(file)));
+            try
+            {
+                ObjectInputStream objects = new SnapshotInputStream(input, classpath.getClassLoader());
+                if(!snapshotKey.equals(objects.readUTF()))
+                {
+                    log.debug(String.format("The snapshot %s is out of date.", file));
+                    return null;
+                }
+                return objects.readObject();
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        catch(Exception e)
+        {
+            log.warn(String.format("Unable to read the snapshot %s (%s)", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void writeSnapshot(String key, String snapshotKey, Object result, Log log)
+    {
+        File file = this.getSnapshotFile(key);
+        File temporary = null;
+        try
+        {
+            if(!this.snapshotDirectory.isDirectory() && !this.snapshotDirectory.mkdirs())
+            {
+                throw new IOException(String.format("Unable to create the directory %s", this.snapshotDirectory));
+            }
+
+            temporary = File.createTempFile("." + file.getName(), ".tmp", this.snapshotDirectory);
+            DeflaterOutputStream output = new DeflaterOutputStream(new FileOutputStream(temporary), new Deflater(Deflater.BEST_SPEED));
+            try
+            {
+                ObjectOutputStream objects = new ObjectOutputStream(new BufferedOutputStream(output));
+                objects.writeUTF(snapshotKey);
+                objects.writeObject(result);
+                objects.flush();
+                output.finish();
+            }
+            finally
+            {
+                output.close();
+            }
+
+            try
+            {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temporary = null;
+        }
+        catch(NotSerializableException e)
+        {
+            log.info(String.format("The results of a controller can not be kept in a snapshot: %s is not serializable.", e.getMessage()));
+        }
+        catch(IOException e)
+        {
+            log.warn(String.format("Unable to write the snapshot %s (%s)", file, e.getMessage()));
+        }
+        finally
+        {
+            if(null != temporary)
+            {
+                try
+                {
+                    Files.deleteIfExists(temporary.toPath());
+                }
+                catch(IOException ignored)
+                {
+                    // ignore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads comma separated values from a stream, one record at a time.  Fields may be quoted, with <code>""</code> for a
+ * quote and line breaks allowed inside the quotes.  The first record names the columns, and every later record is
+ * returned as a map from the column names to the values.
+ */
+public class CsvParser implements Closeable
+{
+    private final Reader reader;
+    private final String source;
+    private final char separator;
+    private int next = -2;
+    private int record = 0;
+    private List<String> columns;
+
+    /**
+     * @param source the name of the input, for error messages.
+     */
+    public CsvParser(Reader reader, String source, char separator)
+    {
+        this.reader = reader;
+        this.source = source;
+        this.separator = separator;
+    }
+
+    /**
+     * @return the next record, or null at the end of the input.
+     */
+    public Map<String, String> nextRecord() throws IOException
+    {
+        if(null == this.columns)
+        {
+            this.columns = this.readFields();
+            if(null == this.columns)
+            {
+                return null;
+            }
+        }
+
+        List<String> fields = this.readFields();
+        if(null == fields)
+        {
+            return null;
+        }
+        if(fields.size() > this.columns.size())
+        {
+            throw new IOException(String.format("%s, record %d: %d fields were found, but there are only %d columns", this.source, this.record, fields.size(), this.columns.size()));
+        }
+
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for(int i = 0; i < this.columns.size(); i++)
+        {
+            result.put(this.columns.get(i), i < fields.size() ? fields.get(i) : "");
+        }
+        return result;
+    }
+
+    public void close() throws IOException
+    {
+        this.reader.close();
+    }
+
+    /**
+     * @return the fields of the next record, or null at the end of the input.  Blank lines are skipped.
+     */
+    private List<String> readFields() throws IOException
+    {
+        int c = this.peek();
+        while('\r' == c || '\n' == c)
+        {
+            this.read();
+            c = this.peek();
+        }
+        if(-1 == c)
+        {
+            return null;
+        }
+
+        this.record++;
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while(true)
+        {
+            c = this.read();
+            if(quoted)
+            {
+                if(-1 == c)
+                {
+                    throw new IOException(String.format("%s, record %d: unterminated quoted field", this.source, this.record));
+                }
+                if('"' == c)
+                {
+                    if('"' == this.peek())
+                    {
+                        field.append((char)this.read());
+                    }
+                    else
+                    {
+                        quoted = false;
+                    }
+                }
+                else
+                {
+                    field.append((char)c);
+                }
+            }
+            else if('"' == c && 0 == field.length())
+            {
+                quoted = true;
+            }
+            else if(this.separator == c)
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else if(-1 == c || '\n' == c || '\r' == c)
+            {
+                if('\r' == c && '\n' == this.peek())
+                {
+                    this.read();
+                }
+                fields.add(field.toString());
+                return fields;
+            }
+            else
+            {
+                field.append((char)c);
+            }
+        }
+    }
+
+    private int peek() throws IOException
+    {
+        if(-2 == this.next)
+        {
+            this.next = this.reader.read();
+        }
+        return this.next;
+    }
+
+    private int read() throws IOException
+    {
+        int c = this.peek();
+        this.next = -2;
+        return c;
+    }
+}
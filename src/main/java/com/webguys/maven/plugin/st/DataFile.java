@@ -0,0 +1,384 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A local JSON, CSV or <code>.properties</code> file whose contents are provided to a template as an attribute, without
+ * a controller.  A JSON array and the records of a CSV file are read as the template iterates them, so a large file is
+ * never held in memory at once.
+ */
+public class DataFile
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The path to the file.
+     *
+     * @parameter
+     * @required
+     */
+    private File file;
+
+    /**
+     * The name of the attribute the contents are provided as.  Defaults to the file name without its extension.
+     *
+     * @parameter
+     */
+    private String name;
+
+    /**
+     * The format of the file: <code>json</code>, <code>csv</code> or <code>properties</code>.  Defaults to the file's
+     * extension.
+     *
+     * @parameter
+     */
+    private String format;
+
+    /**
+     * The character encoding of the file.
+     *
+     * @parameter default-value="UTF-8"
+     */
+    private String encoding = "UTF-8";
+
+    /**
+     * The character that separates the fields of a CSV file.
+     *
+     * @parameter default-value=","
+     */
+    private String separator = ",";
+
+    public File getFile(File baseDirectory)
+    {
+        return this.file.isAbsolute() ? this.file : new File(baseDirectory, this.file.getPath());
+    }
+
+    public String getName()
+    {
+        if(null != this.name)
+        {
+            return this.name;
+        }
+
+        String fileName = this.file.getName();
+        int index = fileName.lastIndexOf('.');
+        return index > 0 ? fileName.substring(0, index) : fileName;
+    }
+
+    public String getFormat() throws MojoExecutionException
+    {
+        String result = this.format;
+        if(null == result)
+        {
+            String fileName = this.file.getName();
+            result = fileName.substring(fileName.lastIndexOf('.') + 1);
+        }
+
+        result = result.toLowerCase();
+        if(!"json".equals(result) && !"csv".equals(result) && !"properties".equals(result))
+        {
+            throw new MojoExecutionException(String.format("Unknown format for the data file %s: %s (expected json, csv or properties)", this.file, result));
+        }
+        return result;
+    }
+
+    public String getEncoding()
+    {
+        return this.encoding;
+    }
+
+    /**
+     * Reads the file.  A JSON array or a CSV file is returned as an iterable that reads the file again each time it is
+     * iterated, and that must be closed once the template has been rendered.
+     */
+    public Object load(File baseDirectory) throws MojoExecutionException
+    {
+        final File source = this.getFile(baseDirectory);
+        if(!source.isFile())
+        {
+            throw new MojoExecutionException(String.format("The data file %s does not exist.", source));
+        }
+        final Charset charset = this.getCharset();
+        String type = this.getFormat();
+
+        try
+        {
+            if("properties".equals(type))
+            {
+                Properties properties = new Properties();
+                Reader reader = open(source, charset);
+                try
+                {
+                    properties.load(reader);
+                }
+                finally
+                {
+                    reader.close();
+                }
+                return new TreeMap<Object, Object>(properties);
+            }
+
+            if("csv".equals(type))
+            {
+                if(1 != this.separator.length())
+                {
+                    throw new MojoExecutionException(String.format("The separator of the data file %s must be a single character.", source));
+                }
+                final char separatorChar = this.separator.charAt(0);
+                return new Records(source)
+                {
+                    @Override
+                    protected Cursor open() throws IOException
+                    {
+                        final CsvParser parser = new CsvParser(DataFile.open(source, charset), source.getPath(), separatorChar);
+                        return new Cursor(parser)
+                        {
+                            @Override
+                            protected Object read() throws IOException
+                            {
+                                Object record = parser.nextRecord();
+                                return null == record ? END : record;
+                            }
+                        };
+                    }
+                };
+            }
+
+            JsonParser parser = new JsonParser(open(source, charset), source.getPath());
+            try
+            {
+                if(!parser.beginArray())
+                {
+                    Object value = parser.readValue();
+                    parser.end();
+                    return value;
+                }
+            }
+            finally
+            {
+                parser.close();
+            }
+
+            return new Records(source)
+            {
+                @Override
+                protected Cursor open() throws IOException
+                {
+                    final JsonParser parser = new JsonParser(DataFile.open(source, charset), source.getPath());
+                    parser.beginArray();
+                    return new Cursor(parser)
+                    {
+                        @Override
+                        protected Object read() throws IOException
+                        {
+                            if(!parser.hasNextElement())
+                            {
+                                parser.end();
+                                return END;
+                            }
+                            return parser.nextElement();
+                        }
+                    };
+                }
+            };
+        }
+        catch(IOException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to read the data file %s (%s)", source, e.getMessage()), e);
+        }
+    }
+
+    private Charset getCharset() throws MojoExecutionException
+    {
+        try
+        {
+            return Charset.forName(this.encoding);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(String.format("Unsupported encoding for the data file %s: %s", this.file, this.encoding), e);
+        }
+    }
+
+    private static Reader open(File file, Charset charset) throws IOException
+    {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), charset), BUFFER_SIZE);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(this.file);
+    }
+
+    /**
+     * The records of a file, read one at a time each time they are iterated.  Closing it closes the iterations that
+     * were not read to the end.
+     */
+    private abstract static class Records implements Iterable<Object>, Closeable
+    {
+        private final File source;
+        private final List<Cursor> open = new ArrayList<Cursor>();
+
+        private Records(File source)
+        {
+            this.source = source;
+        }
+
+        protected abstract Cursor open() throws IOException;
+
+        public Iterator<Object> iterator()
+        {
+            try
+            {
+                Cursor cursor = this.open();
+                synchronized(this.open)
+                {
+                    this.open.add(cursor);
+                }
+                return cursor;
+            }
+            catch(IOException e)
+            {
+                throw new UncheckedIOException(String.format("Unable to read the data file %s (%s)", this.source, e.getMessage()), e);
+            }
+        }
+
+        public void close()
+        {
+            List<Cursor> cursors;
+            synchronized(this.open)
+            {
+                cursors = new ArrayList<Cursor>(this.open);
+            }
+            for(Cursor cursor : cursors)
+            {
+                cursor.close();
+            }
+        }
+
+        protected abstract class Cursor implements Iterator<Object>
+        {
+            protected final Object END = new Object();
+
+            private final Closeable parser;
+            private Object next;
+            private boolean buffered;
+            private boolean closed;
+
+            protected Cursor(Closeable parser)
+            {
+                this.parser = parser;
+            }
+
+            /**
+             * @return the next record, or <code>END</code>.
+             */
+            protected abstract Object read() throws IOException;
+
+            public boolean hasNext()
+            {
+                if(this.closed)
+                {
+                    return false;
+                }
+                if(!this.buffered)
+                {
+                    try
+                    {
+                        this.next = this.read();
+                        this.buffered = true;
+                    }
+                    catch(IOException e)
+                    {
+                        this.close();
+                        throw new UncheckedIOException(String.format("Unable to read the data file %s (%s)", source, e.getMessage()), e);
+                    }
+                }
+                if(END == this.next)
+                {
+                    this.close();
+                    return false;
+                }
+                return true;
+            }
+
+            public Object next()
+            {
+                if(!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                this.buffered = false;
+                return this.next;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            private void close()
+            {
+                if(this.closed)
+                {
+                    return;
+                }
+                this.closed = true;
+                try
+                {
+                    this.parser.close();
+                }
+                catch(IOException e)
+                {
+                    // the file was only read, so there is nothing to lose
+                }
+                synchronized(open)
+                {
+                    open.remove(this);
+                }
+            }
+        }
+    }
+}
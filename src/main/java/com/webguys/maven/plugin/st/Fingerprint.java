@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Accumulates a SHA-1 digest over the inputs of a template.
+ */
+public class Fingerprint
+{
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ClassValue<String> CLASS_DIGESTS = new ClassValue<String>()
+    {
+        @Override
+        protected String computeValue(Class<?> type)
+        {
+            ClassLoader classLoader = type.getClassLoader();
+            InputStream input = null == classLoader ? null : classLoader.getResourceAsStream(type.getName().replace('.', '/') + ".class");
+            if(null == input)
+            {
+                return type.getName();
+            }
+
+            try
+            {
+                try
+                {
+                    Fingerprint fingerprint = new Fingerprint().update(type.getName());
+                    byte[] buffer = new byte[8192];
+                    int count;
+                    while(-1 != (count = input.read(buffer)))
+                    {
+                        fingerprint.digest.update(buffer, 0, count);
+                    }
+                    return fingerprint.finish();
+                }
+                finally
+                {
+                    input.close();
+                }
+            }
+            catch(IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    private final MessageDigest digest;
+
+    public Fingerprint()
+    {
+        try
+        {
+            this.digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-1 is not supported by this JVM.", e);
+        }
+    }
+
+    public Fingerprint update(String value)
+    {
+        try
+        {
+            return this.update(String.valueOf(value).getBytes("UTF-8"));
+        }
+        catch(UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Fingerprint update(byte[] bytes)
+    {
+        this.digest.update((byte)(bytes.length >>> 24));
+        this.digest.update((byte)(bytes.length >>> 16));
+        this.digest.update((byte)(bytes.length >>> 8));
+        this.digest.update((byte)bytes.length);
+        this.digest.update(bytes);
+        return this;
+    }
+
+    public Fingerprint update(Map<String, String> values)
+    {
+        if(null == values)
+        {
+            return this.update("<none>");
+        }
+
+        Map<String, String> sorted = new TreeMap<String, String>(values);
+        this.update(String.valueOf(sorted.size()));
+        for(Map.Entry<String, String> entry : sorted.entrySet())
+        {
+            this.update(entry.getKey());
+            this.update(entry.getValue());
+        }
+        return this;
+    }
+
+    public Fingerprint updateFile(File file) throws IOException
+    {
+        this.update(String.valueOf(file.length()));
+        InputStream input = new FileInputStream(file);
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int count;
+            while(-1 != (count = input.read(buffer)))
+            {
+                this.digest.update(buffer, 0, count);
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+        return this;
+    }
+
+    /**
+     * Adds the serialized form of an object and everything it refers to, and the class files of their classes.  When
+     * the object can not be serialized the fingerprint is left incomplete, and should be discarded.
+     */
+    public Fingerprint updateObject(Object value) throws IOException
+    {
+        final Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        ObjectOutputStream output = new ObjectOutputStream(new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+                digest.update((byte)b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length)
+            {
+                digest.update(bytes, offset, length);
+            }
+        })
+        {
+            @Override
+            protected void annotateClass(Class<?> type)
+            {
+                classes.add(type);
+            }
+        };
+        output.writeObject(value);
+        output.flush();
+
+        // the serialized fields say nothing of the methods a template calls to read them
+        for(Class<?> type : classes)
+        {
+            this.updateClass(type);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the class files of a class and its superclasses.  Classes of the JVM itself are identified by their name.
+     */
+    public Fingerprint updateClass(Class<?> type) throws IOException
+    {
+        for(Class<?> current = type; null != current && Object.class != current; current = current.getSuperclass())
+        {
+            try
+            {
+                this.update(CLASS_DIGESTS.get(current));
+            }
+            catch(UncheckedIOException e)
+            {
+                throw e.getCause();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the relative path and contents of every file below the given directory, in a stable order.
+     */
+    public Fingerprint updateDirectory(File directory) throws IOException
+    {
+        this.updateDirectory(directory, "");
+        return this;
+    }
+
+    private void updateDirectory(File directory, String prefix) throws IOException
+    {
+        File[] files = directory.listFiles();
+        if(null == files)
+        {
+            return;
+        }
+
+        Arrays.sort(files);
+        for(File file : files)
+        {
+            String path = prefix + file.getName();
+            if(file.isDirectory())
+            {
+                this.updateDirectory(file, path + "/");
+            }
+            else
+            {
+                this.update(path);
+                this.updateFile(file);
+            }
+        }
+    }
+
+    /**
+     * Adds the path, modification time and length of a file, or of every file below a directory, without reading them.
+     * This is enough to notice that a file has changed since it was last used in the same JVM.
+     */
+    public Fingerprint updateStamp(File file)
+    {
+        if(!file.isDirectory())
+        {
+            return this.update(file.getPath() + ':' + file.lastModified() + ':' + file.length());
+        }
+
+        File[] files = file.listFiles();
+        if(null != files)
+        {
+            Arrays.sort(files);
+            for(File child : files)
+            {
+                this.updateStamp(child);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Completes the digest and returns it as a hex string.  The fingerprint can not be updated afterwards.
+     */
+    public String finish()
+    {
+        byte[] bytes = this.digest.digest();
+        char[] result = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++)
+        {
+            result[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            result[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+}
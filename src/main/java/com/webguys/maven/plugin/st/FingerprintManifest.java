@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The fingerprints of the templates rendered by previous builds, keyed by the absolute path of the output file.  When
+ * the target of a template is a pattern, the files it produced are recorded as well.
+ */
+public class FingerprintManifest
+{
+    private static final String OUTPUTS_PREFIX = "outputs:";
+
+    private final File file;
+    private final Properties fingerprints = new Properties();
+    private boolean modified = false;
+
+    public FingerprintManifest(File file) throws IOException
+    {
+        this.file = file;
+        if(file.isFile())
+        {
+            InputStream input = new FileInputStream(file);
+            try
+            {
+                this.fingerprints.load(input);
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+    }
+
+    public synchronized String get(File target)
+    {
+        return this.fingerprints.getProperty(target.getAbsolutePath());
+    }
+
+    /**
+     * @return the files produced for a target pattern, or null if none were recorded.
+     */
+    public synchronized List<File> getOutputs(File target)
+    {
+        String outputs = this.fingerprints.getProperty(OUTPUTS_PREFIX + target.getAbsolutePath());
+        if(null == outputs)
+        {
+            return null;
+        }
+
+        List<File> result = new ArrayList<File>();
+        for(String path : outputs.split("\n"))
+        {
+            if(!path.isEmpty())
+            {
+                result.add(new File(path));
+            }
+        }
+        return result;
+    }
+
+    public synchronized void put(File target, String fingerprint)
+    {
+        this.fingerprints.setProperty(target.getAbsolutePath(), fingerprint);
+        this.modified = true;
+    }
+
+    /**
+     * Records the fingerprint of a target pattern and the files produced for it.
+     *
+     * @return the files recorded for the target before that are not among its outputs now.
+     */
+    public synchronized List<File> put(File target, String fingerprint, Collection<File> outputs)
+    {
+        List<File> stale = new ArrayList<File>();
+        List<File> previous = this.getOutputs(target);
+        if(null != previous)
+        {
+            Set<File> current = new HashSet<File>();
+            for(File output : outputs)
+            {
+                current.add(output.getAbsoluteFile());
+            }
+            for(File output : previous)
+            {
+                if(!current.contains(output.getAbsoluteFile()))
+                {
+                    stale.add(output);
+                }
+            }
+        }
+
+        StringBuilder paths = new StringBuilder();
+        for(File output : outputs)
+        {
+            paths.append(output.getAbsolutePath()).append('\n');
+        }
+        this.fingerprints.setProperty(OUTPUTS_PREFIX + target.getAbsolutePath(), paths.toString());
+        this.put(target, fingerprint);
+        return stale;
+    }
+
+    /**
+     * Forgets the fingerprint of a target, so that it is rendered again.  The files produced for a target pattern are
+     * kept until new ones are recorded, so that those no longer produced can still be found.
+     */
+    public synchronized void remove(File target)
+    {
+        if(null != this.fingerprints.remove(target.getAbsolutePath()))
+        {
+            this.modified = true;
+        }
+    }
+
+    public synchronized void save() throws IOException
+    {
+        if(!this.modified)
+        {
+            return;
+        }
+
+        File directory = this.file.getParentFile();
+        if(!directory.exists() && !directory.mkdirs())
+        {
+            throw new IOException(String.format("Unable to create the directory: %s", directory));
+        }
+
+        OutputStream output = new FileOutputStream(this.file);
+        try
+        {
+            this.fingerprints.store(output, "StringTemplate Maven Plugin template fingerprints");
+        }
+        finally
+        {
+            output.close();
+        }
+        this.modified = false;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares one {@link TemplateGroup} between all of the templates that use the same directory or group file, encoding and
+ * {@link GroupConfiguration}, so each template file is parsed only once.  An entry is checked against the files in its
+ * directory the first time it is used after {@link #revalidate()}, and is replaced when any of them have been added,
+ * removed or modified.
+ * <p>
+ * When a {@link SharedCache} is given, the groups are also shared with the other executions of the plugin in the same
+ * JVM, and must be released with {@link #close()}.
+ */
+public class GroupCache
+{
+    private static class Entry
+    {
+        private final TemplateGroup group;
+        private final String stamp;
+        private volatile int generation;
+
+        private Entry(TemplateGroup group, String stamp, int generation)
+        {
+            this.group = group;
+            this.stamp = stamp;
+            this.generation = generation;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final SharedCache<TemplateGroup> shared;
+    private volatile int generation = 0;
+
+    public GroupCache()
+    {
+        this(null);
+    }
+
+    /**
+     * @param shared the groups shared with other executions, or null to load the groups for this execution only.
+     */
+    public GroupCache(SharedCache<TemplateGroup> shared)
+    {
+        this.shared = shared;
+    }
+
+    /**
+     * @param path a directory of template files, or a group file.
+     * @param configuration the adaptors and renderers installed in a new group.
+     */
+    public TemplateGroup get(File path, final String encoding, final GroupConfiguration configuration)
+    {
+        // modules that share templates usually refer to them with different relative paths
+        final File source = path.toPath().toAbsolutePath().normalize().toFile();
+        String key = source.getPath() + File.pathSeparator + encoding + File.pathSeparator + configuration.getKey();
+        Entry entry = this.entries.get(key);
+        if(null != entry && entry.generation == this.generation)
+        {
+            return entry.group;
+        }
+
+        synchronized(this)
+        {
+            entry = this.entries.get(key);
+            String stamp = stamp(TemplateGroup.getRoot(source));
+            if(null == entry || !entry.stamp.equals(stamp))
+            {
+                TemplateGroup group;
+                if(null == this.shared)
+                {
+                    group = new TemplateGroup(source, encoding);
+                    configuration.apply(group);
+                }
+                else
+                {
+                    if(null != entry)
+                    {
+                        this.shared.release(entry.group);
+                    }
+                    group = this.shared.acquire(key, stamp, new SharedCache.Factory<TemplateGroup>()
+                    {
+                        public TemplateGroup create()
+                        {
+                            TemplateGroup group = new TemplateGroup(source, encoding);
+                            configuration.apply(group);
+                            return group;
+                        }
+                    });
+                }
+                entry = new Entry(group, stamp, this.generation);
+                this.entries.put(key, entry);
+            }
+            entry.generation = this.generation;
+            return entry.group;
+        }
+    }
+
+    /**
+     * Causes every entry to be checked for changes to its directory before it is used again.
+     */
+    public synchronized void revalidate()
+    {
+        this.generation++;
+    }
+
+    /**
+     * Releases the groups shared with other executions.
+     */
+    public synchronized void close()
+    {
+        if(null != this.shared)
+        {
+            for(Entry entry : this.entries.values())
+            {
+                this.shared.release(entry.group);
+            }
+        }
+        this.entries.clear();
+    }
+
+    private static String stamp(File directory)
+    {
+        return new Fingerprint().updateStamp(directory).finish();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.stringtemplate.v4.AttributeRenderer;
+import org.stringtemplate.v4.ModelAdaptor;
+import org.stringtemplate.v4.STGroup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The model adaptors and attribute renderers installed in every template group.  The key of a configuration tells
+ * apart configurations whose classes come from different class loaders, so groups are only shared between executions
+ * that load the same classes.
+ */
+public class GroupConfiguration
+{
+    private static final AccessorModelAdaptor ACCESSOR_ADAPTOR = new AccessorModelAdaptor();
+
+    private final boolean accessorAdaptor;
+    private final Map<Class<?>, ModelAdaptor> adaptors = new LinkedHashMap<Class<?>, ModelAdaptor>();
+    private final Map<Class<?>, AttributeRenderer> renderers = new LinkedHashMap<Class<?>, AttributeRenderer>();
+    private final List<Registration> registrations = new ArrayList<Registration>();
+    private final StringBuilder key = new StringBuilder();
+
+    /**
+     * @param accessorAdaptor should objects be read with an {@link AccessorModelAdaptor} rather than ST's own adaptor?
+     * @param classLoader the loader of the adaptor and renderer classes; only used when some are given.
+     */
+    public GroupConfiguration(boolean accessorAdaptor, List<Adaptor> adaptors, List<Renderer> renderers, ClassLoader classLoader)
+        throws MojoExecutionException
+    {
+        this.accessorAdaptor = accessorAdaptor;
+        this.key.append(accessorAdaptor ? "accessor" : "reflection");
+        if(null != adaptors)
+        {
+            for(Adaptor adaptor : adaptors)
+            {
+                Class<?> type = adaptor.loadAttributeType(classLoader);
+                ModelAdaptor instance = adaptor.newInstance(classLoader, ModelAdaptor.class);
+                this.adaptors.put(type, instance);
+                this.add(adaptor, type, instance);
+            }
+        }
+        if(null != renderers)
+        {
+            for(Renderer renderer : renderers)
+            {
+                Class<?> type = renderer.loadAttributeType(classLoader);
+                AttributeRenderer instance = renderer.newInstance(classLoader, AttributeRenderer.class);
+                this.renderers.put(type, instance);
+                this.add(renderer, type, instance);
+            }
+        }
+    }
+
+    /**
+     * Registers the adaptors and renderers with the group.
+     */
+    public void apply(STGroup group)
+    {
+        if(this.accessorAdaptor)
+        {
+            // replaces the default for Object, which still comes before ST's adaptors for maps and templates
+            group.registerModelAdaptor(Object.class, ACCESSOR_ADAPTOR);
+        }
+        for(Map.Entry<Class<?>, ModelAdaptor> adaptor : this.adaptors.entrySet())
+        {
+            group.registerModelAdaptor(adaptor.getKey(), adaptor.getValue());
+        }
+        for(Map.Entry<Class<?>, AttributeRenderer> renderer : this.renderers.entrySet())
+        {
+            group.registerRenderer(renderer.getKey(), renderer.getValue());
+        }
+    }
+
+    /**
+     * Adds the class files of the adaptors and renderers, and of the types they are registered for, to the fingerprint.
+     */
+    public void updateClasses(Fingerprint fingerprint) throws IOException
+    {
+        for(Map.Entry<Class<?>, ModelAdaptor> adaptor : this.adaptors.entrySet())
+        {
+            fingerprint.updateClass(adaptor.getKey()).updateClass(adaptor.getValue().getClass());
+        }
+        for(Map.Entry<Class<?>, AttributeRenderer> renderer : this.renderers.entrySet())
+        {
+            fingerprint.updateClass(renderer.getKey()).updateClass(renderer.getValue().getClass());
+        }
+    }
+
+    /**
+     * @return what identifies the loaded classes of the configuration, to key shared groups.
+     */
+    public String getKey()
+    {
+        return this.key.toString();
+    }
+
+    /**
+     * @return the configuration as it was given, which is the same from one build to the next.
+     */
+    public String getDescription()
+    {
+        StringBuilder description = new StringBuilder(this.accessorAdaptor ? "accessor" : "reflection");
+        describe(description, this.registrations);
+        return description.toString();
+    }
+
+    /**
+     * @return the description of a configuration, the same as {@link #getDescription()}, without loading its classes.
+     */
+    public static String describe(boolean accessorAdaptor, List<Adaptor> adaptors, List<Renderer> renderers)
+    {
+        StringBuilder description = new StringBuilder(accessorAdaptor ? "accessor" : "reflection");
+        describe(description, adaptors);
+        describe(description, renderers);
+        return description.toString();
+    }
+
+    private static void describe(StringBuilder description, List<? extends Registration> registrations)
+    {
+        if(null == registrations)
+        {
+            return;
+        }
+        for(Registration registration : registrations)
+        {
+            description.append(',').append(registration.getClass().getSimpleName()).append(':').append(registration);
+        }
+    }
+
+    private void add(Registration registration, Class<?> type, Object instance)
+    {
+        this.registrations.add(registration);
+        this.key.append(',').append(registration.getClass().getSimpleName()).append(':').append(registration)
+            .append('@').append(Integer.toHexString(System.identityHashCode(type)))
+            .append('@').append(Integer.toHexString(System.identityHashCode(instance.getClass())));
+    }
+}
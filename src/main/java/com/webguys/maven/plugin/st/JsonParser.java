@@ -0,0 +1,358 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small JSON parser that reads values from a stream.  Objects become maps that keep the order of their keys, arrays
+ * become lists, and numbers become a <code>Long</code>, a <code>BigInteger</code> or a <code>BigDecimal</code> so that
+ * they are rendered as they were written.  The elements of an array can also be read one at a time, without holding the
+ * whole array in memory.
+ */
+public class JsonParser implements Closeable
+{
+    private final Reader reader;
+    private final String source;
+    private int next = -2;
+    private int line = 1;
+    private boolean firstElement;
+
+    /**
+     * @param source the name of the input, for error messages.
+     */
+    public JsonParser(Reader reader, String source)
+    {
+        this.reader = reader;
+        this.source = source;
+    }
+
+    /**
+     * @return true if the next value is an array, whose elements may then be read with {@link #nextElement()}.
+     */
+    public boolean beginArray() throws IOException
+    {
+        if('[' != this.peekToken())
+        {
+            return false;
+        }
+        this.read();
+        this.firstElement = true;
+        return true;
+    }
+
+    /**
+     * Reads the next element of the array started by {@link #beginArray()}.
+     *
+     * @return false at the end of the array.
+     */
+    public boolean hasNextElement() throws IOException
+    {
+        int c = this.peekToken();
+        if(']' == c)
+        {
+            this.read();
+            return false;
+        }
+        if(this.firstElement)
+        {
+            // a leading ',' is refused by nextElement, as a value can not start with it
+            this.firstElement = false;
+        }
+        else if(',' == c)
+        {
+            this.read();
+        }
+        else
+        {
+            throw this.error("expected ',' or ']'");
+        }
+        return true;
+    }
+
+    public Object nextElement() throws IOException
+    {
+        return this.readValue();
+    }
+
+    /**
+     * Reads the whole of the next value.
+     */
+    public Object readValue() throws IOException
+    {
+        int c = this.peekToken();
+        switch(c)
+        {
+            case '{':
+                return this.readObject();
+            case '[':
+                return this.readArray();
+            case '"':
+                return this.readString();
+            case 't':
+                this.expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                this.expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                this.expect("null");
+                return null;
+            default:
+                if('-' == c || (c >= '0' && c <= '9'))
+                {
+                    return this.readNumber();
+                }
+                throw this.error(-1 == c ? "unexpected end of input" : String.format("unexpected character '%c'", (char)c));
+        }
+    }
+
+    /**
+     * Fails unless only whitespace remains.
+     */
+    public void end() throws IOException
+    {
+        if(-1 != this.peekToken())
+        {
+            throw this.error("unexpected content after the value");
+        }
+    }
+
+    public void close() throws IOException
+    {
+        this.reader.close();
+    }
+
+    private Map<String, Object> readObject() throws IOException
+    {
+        this.read();
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        if('}' == this.peekToken())
+        {
+            this.read();
+            return result;
+        }
+
+        while(true)
+        {
+            if('"' != this.peekToken())
+            {
+                throw this.error("expected a property name");
+            }
+            String key = this.readString();
+            if(':' != this.peekToken())
+            {
+                throw this.error("expected ':'");
+            }
+            this.read();
+            result.put(key, this.readValue());
+
+            int c = this.peekToken();
+            this.read();
+            if('}' == c)
+            {
+                return result;
+            }
+            if(',' != c)
+            {
+                throw this.error("expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() throws IOException
+    {
+        this.read();
+        List<Object> result = new ArrayList<Object>();
+        if(']' == this.peekToken())
+        {
+            this.read();
+            return result;
+        }
+
+        while(true)
+        {
+            result.add(this.readValue());
+            int c = this.peekToken();
+            this.read();
+            if(']' == c)
+            {
+                return result;
+            }
+            if(',' != c)
+            {
+                throw this.error("expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() throws IOException
+    {
+        this.read();
+        StringBuilder result = new StringBuilder();
+        while(true)
+        {
+            int c = this.read();
+            if('"' == c)
+            {
+                return result.toString();
+            }
+            if(-1 == c || '\n' == c)
+            {
+                throw this.error("unterminated string");
+            }
+            if('\\' != c)
+            {
+                result.append((char)c);
+                continue;
+            }
+
+            c = this.read();
+            switch(c)
+            {
+                case '"':
+                case '\\':
+                case '/':
+                    result.append((char)c);
+                    break;
+                case 'b':
+                    result.append('\b');
+                    break;
+                case 'f':
+                    result.append('\f');
+                    break;
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 'r':
+                    result.append('\r');
+                    break;
+                case 't':
+                    result.append('\t');
+                    break;
+                case 'u':
+                    char[] digits = new char[4];
+                    for(int i = 0; i < digits.length; i++)
+                    {
+                        digits[i] = (char)this.read();
+                    }
+                    try
+                    {
+                        result.append((char)Integer.parseInt(new String(digits), 16));
+                    }
+                    catch(NumberFormatException e)
+                    {
+                        throw this.error(String.format("invalid unicode escape \\u%s", new String(digits)));
+                    }
+                    break;
+                default:
+                    throw this.error(String.format("invalid escape \\%c", (char)c));
+            }
+        }
+    }
+
+    private Object readNumber() throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        boolean integral = true;
+        int c = this.peek();
+        while('-' == c || '+' == c || '.' == c || 'e' == c || 'E' == c || (c >= '0' && c <= '9'))
+        {
+            integral &= '.' != c && 'e' != c && 'E' != c;
+            text.append((char)this.read());
+            c = this.peek();
+        }
+
+        try
+        {
+            if(!integral)
+            {
+                return new BigDecimal(text.toString());
+            }
+            BigInteger value = new BigInteger(text.toString());
+            return value.bitLength() < 64 ? (Object)value.longValue() : value;
+        }
+        catch(NumberFormatException e)
+        {
+            throw this.error(String.format("invalid number %s", text));
+        }
+    }
+
+    private void expect(String word) throws IOException
+    {
+        for(int i = 0; i < word.length(); i++)
+        {
+            if(word.charAt(i) != this.read())
+            {
+                throw this.error(String.format("expected %s", word));
+            }
+        }
+    }
+
+    private int peekToken() throws IOException
+    {
+        int c = this.peek();
+        while(' ' == c || '\t' == c || '\r' == c || '\n' == c)
+        {
+            this.read();
+            c = this.peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException
+    {
+        if(-2 == this.next)
+        {
+            this.next = this.reader.read();
+        }
+        return this.next;
+    }
+
+    private int read() throws IOException
+    {
+        int c = this.peek();
+        this.next = -2;
+        if('\n' == c)
+        {
+            this.line++;
+        }
+        return c;
+    }
+
+    private IOException error(String message)
+    {
+        return new IOException(String.format("%s, line %d: %s", this.source, this.line, message));
+    }
+}
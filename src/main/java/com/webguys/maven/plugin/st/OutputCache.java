@@ -0,0 +1,297 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.logging.Log;
+import org.stringtemplate.v4.ST;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps rendered files in a directory outside of the build, usually below <code>~/.m2</code>, so that builds that
+ * start from a clean project can restore them instead of rendering them again.  A file is keyed by the contents of
+ * its template directory and data files, the template's configuration, the serialized results of its controller, the
+ * class files of the controller, of the results and of the adaptors and renderers, and the versions of the plugin and
+ * of StringTemplate.
+ * <p>
+ * Several builds may use the same directory at once: files are added by moving them into place, and a file that
+ * disappears while it is restored is rendered instead.  The least recently used files are removed once the directory
+ * grows beyond its maximum size.  A file's last use is kept in its access time, since a file restored as a hard link
+ * shares its modification time with the output.
+ */
+public class OutputCache
+{
+    private static final String RENDERER = describeRenderer();
+
+    private final File directory;
+    private final long maxSize;
+    private final boolean link;
+    private final Log log;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger uncacheable = new AtomicInteger();
+    private final AtomicInteger stored = new AtomicInteger();
+    private int evicted = 0;
+    private long size = 0;
+
+    /**
+     * @param maxSize the number of bytes the directory may hold.
+     * @param link should files be restored as hard links to the cached files, rather than as copies?
+     */
+    public OutputCache(File directory, long maxSize, boolean link, Log log)
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.link = link;
+        this.log = log;
+    }
+
+    /**
+     * @param inputs the fingerprint of everything but the controller's results that the output depends on.
+     * @param results the results of the controller that are rendered to the file, or null.
+     * @return the key of the output, or null if the results can not be serialized.
+     */
+    public String getKey(String inputs, Object results)
+    {
+        Fingerprint fingerprint = new Fingerprint().update(RENDERER).update(inputs);
+        if(null != results)
+        {
+            try
+            {
+                fingerprint.updateObject(results);
+            }
+            catch(NotSerializableException e)
+            {
+                this.log.debug(String.format("The output can not be cached: %s is not serializable.", e.getMessage()));
+                this.uncacheable.incrementAndGet();
+                return null;
+            }
+            catch(IOException e)
+            {
+                this.log.debug(String.format("The output can not be cached: the results could not be serialized (%s).", e.getMessage()));
+                this.uncacheable.incrementAndGet();
+                return null;
+            }
+        }
+        return fingerprint.finish();
+    }
+
+    /**
+     * Puts the cached output in place of the target.
+     *
+     * @return true if the output was cached and has been restored.
+     */
+    public boolean restore(String key, File target, RenderCounts counts, Timings timings)
+    {
+        File file = this.getFile(key);
+        long start = timings.start();
+        try
+        {
+            if(!file.isFile())
+            {
+                this.misses.incrementAndGet();
+                return false;
+            }
+
+            long length = file.length();
+            counts.addOutput(AtomicOutput.replace(file.toPath(), target, this.link));
+            this.markUsed(file);
+            timings.addOutput(length);
+            this.hits.incrementAndGet();
+            return true;
+        }
+        catch(IOException e)
+        {
+            this.log.debug(String.format("Unable to restore %s from the output cache (%s)", target, e.getMessage()));
+            this.misses.incrementAndGet();
+            return false;
+        }
+        finally
+        {
+            timings.stop(Timings.Phase.FILE_WRITE, start);
+        }
+    }
+
+    /**
+     * Copies a rendered file into the cache.
+     */
+    public void store(String key, File output)
+    {
+        File file = this.getFile(key);
+        try
+        {
+            AtomicOutput.replace(output.toPath(), file, false);
+            this.stored.incrementAndGet();
+        }
+        catch(IOException e)
+        {
+            this.log.warn(String.format("Unable to add %s to the output cache (%s)", output, e.getMessage()));
+        }
+    }
+
+    /**
+     * Removes the least recently used files until the cache is no larger than its maximum size.
+     */
+    public synchronized void evict()
+    {
+        List<File> files = new ArrayList<File>();
+        File[] directories = this.directory.listFiles();
+        if(null != directories)
+        {
+            for(File directory : directories)
+            {
+                File[] children = directory.listFiles();
+                for(File child : null == children ? new File[0] : children)
+                {
+                    // leave the files that other builds are still writing
+                    if(!child.getName().startsWith("."))
+                    {
+                        files.add(child);
+                    }
+                }
+            }
+        }
+
+        long total = 0;
+        final Map<File, Long> used = new HashMap<File, Long>();
+        for(File file : files)
+        {
+            total += file.length();
+            used.put(file, lastUsed(file));
+        }
+        Collections.sort(files, new Comparator<File>()
+        {
+            public int compare(File left, File right)
+            {
+                return Long.compare(used.get(left), used.get(right));
+            }
+        });
+
+        for(File file : files)
+        {
+            if(total <= this.maxSize)
+            {
+                break;
+            }
+            long length = file.length();
+            if(file.delete())
+            {
+                total -= length;
+                this.evicted++;
+            }
+        }
+        this.size = total;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("Output cache: %d hits, %d misses, %d uncacheable, %d stored, %d evicted, %d of %d KB used",
+            this.hits.get(), this.misses.get(), this.uncacheable.get(), this.stored.get(), this.evicted, this.size / 1024, this.maxSize / 1024);
+    }
+
+    /**
+     * Records the use of a cached file in its access time, leaving its modification time, which a hard link shares with
+     * the output it was restored to, untouched.
+     */
+    private void markUsed(File file)
+    {
+        try
+        {
+            Files.getFileAttributeView(file.toPath(), BasicFileAttributeView.class).setTimes(null, FileTime.fromMillis(System.currentTimeMillis()), null);
+        }
+        catch(IOException e)
+        {
+            this.log.debug(String.format("Unable to record the use of %s (%s)", file, e.getMessage()));
+        }
+    }
+
+    private static long lastUsed(File file)
+    {
+        try
+        {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).lastAccessTime().toMillis();
+        }
+        catch(IOException e)
+        {
+            return file.lastModified();
+        }
+    }
+
+    private File getFile(String key)
+    {
+        return new File(new File(this.directory, key.substring(0, 2)), key.substring(2) + ".out");
+    }
+
+    /**
+     * The contents of the plugin and StringTemplate jars, so that a rebuilt snapshot of either changes every key, while
+     * the same release downloaded by another machine keeps them.
+     */
+    private static String describeRenderer()
+    {
+        Fingerprint fingerprint = new Fingerprint().update(ST.VERSION);
+        for(Class<?> type : new Class<?>[] { ST.class, OutputCache.class })
+        {
+            CodeSource source = type.getProtectionDomain().getCodeSource();
+            if(null == source || !"file".equals(source.getLocation().getProtocol()))
+            {
+                fingerprint.update("unknown");
+                continue;
+            }
+            try
+            {
+                File location = new File(source.getLocation().toURI());
+                if(location.isDirectory())
+                {
+                    fingerprint.updateDirectory(location);
+                }
+                else
+                {
+                    fingerprint.updateFile(location);
+                }
+            }
+            catch(Exception e)
+            {
+                fingerprint.update(String.valueOf(source.getLocation()));
+            }
+        }
+        return fingerprint.finish();
+    }
+}
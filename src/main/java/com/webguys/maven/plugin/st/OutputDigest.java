@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Digests rendered output instead of writing it, to tell whether an output file already holds what would be rendered.
+ */
+public class OutputDigest
+{
+    private final File target;
+    private final Charset charset;
+    private final MessageDigest digest = AtomicOutput.newDigest();
+
+    private Writer writer;
+    private long size;
+
+    public OutputDigest(File target, Charset charset)
+    {
+        this.target = target;
+        this.charset = charset;
+    }
+
+    public Writer open()
+    {
+        OutputStream output = new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+                digest.update((byte)b);
+                size++;
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length)
+            {
+                digest.update(bytes, offset, length);
+                size += length;
+            }
+        };
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, this.charset));
+        return this.writer;
+    }
+
+    /**
+     * Completes the digest and compares it with the target.
+     *
+     * @return true if the target exists and has the same content as the output.
+     */
+    public boolean matches() throws IOException
+    {
+        this.writer.close();
+        byte[] rendered = this.digest.digest();
+
+        Path targetPath = this.target.toPath();
+        return Files.isRegularFile(targetPath) && Files.size(targetPath) == this.size && Arrays.equals(rendered, AtomicOutput.digestOf(targetPath));
+    }
+
+    /**
+     * @return the number of bytes rendered, once the output has been compared.
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Names a class of attributes and the class that handles them for the templates.  Both classes are loaded from the
+ * controller class path, so they may come from the project or its dependencies.
+ */
+public abstract class Registration
+{
+    /**
+     * The class of the attributes, which also covers its subclasses and implementations.
+     *
+     * @parameter
+     * @required
+     */
+    private String attributeType;
+
+    /**
+     * The class that handles the attributes.  It must have a public constructor with no arguments.
+     *
+     * @parameter
+     * @required
+     */
+    private String className;
+
+    public String getAttributeType()
+    {
+        return this.attributeType;
+    }
+
+    public String getClassName()
+    {
+        return this.className;
+    }
+
+    public Class<?> loadAttributeType(ClassLoader classLoader) throws MojoExecutionException
+    {
+        if(null == this.attributeType)
+        {
+            throw new MojoExecutionException(String.format("The %s %s has no attributeType.", this.getKind(), this.className));
+        }
+        try
+        {
+            return Class.forName(this.attributeType, false, classLoader);
+        }
+        catch(ClassNotFoundException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to load the attribute type of the %s %s: %s", this.getKind(), this.className, this.attributeType), e);
+        }
+    }
+
+    /**
+     * @return a new instance of the handling class, which must implement the given interface.
+     */
+    public <T> T newInstance(ClassLoader classLoader, Class<T> expected) throws MojoExecutionException
+    {
+        if(null == this.className)
+        {
+            throw new MojoExecutionException(String.format("The %s for %s has no className.", this.getKind(), this.attributeType));
+        }
+
+        Class<?> type;
+        try
+        {
+            type = Class.forName(this.className, true, classLoader);
+        }
+        catch(ClassNotFoundException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to load %s: %s", this.getKind(), this.className), e);
+        }
+        if(!expected.isAssignableFrom(type))
+        {
+            throw new MojoExecutionException(String.format("The %s %s does not implement %s.", this.getKind(), this.className, expected.getName()));
+        }
+
+        try
+        {
+            return expected.cast(type.getConstructor().newInstance());
+        }
+        catch(Exception e)
+        {
+            throw new MojoExecutionException(String.format("Unable to create %s: %s (%s)", this.getKind(), this.className, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * @return what the registered class is, for messages.
+     */
+    protected abstract String getKind();
+
+    @Override
+    public String toString()
+    {
+        return this.attributeType + "=" + this.className;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the templates skipped and the output files written or left unchanged.
+ */
+public class RenderCounts
+{
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    public void addOutput(boolean written)
+    {
+        (written ? this.written : this.unchanged).incrementAndGet();
+    }
+
+    public void addSkipped()
+    {
+        this.skipped.incrementAndGet();
+    }
+
+    public void add(RenderCounts counts)
+    {
+        this.written.addAndGet(counts.getWritten());
+        this.unchanged.addAndGet(counts.getUnchanged());
+        this.skipped.addAndGet(counts.getSkipped());
+    }
+
+    public int getWritten()
+    {
+        return this.written.get();
+    }
+
+    public int getUnchanged()
+    {
+        return this.unchanged.get();
+    }
+
+    public int getSkipped()
+    {
+        return this.skipped.get();
+    }
+}
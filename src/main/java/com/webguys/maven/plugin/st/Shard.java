@@ -0,0 +1,231 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+
+/**
+ * Splits a large collection attribute of a template into chunks that are each rendered to their own file, named by
+ * replacing <code>${shard}</code> in the template's target with the number of the chunk.  An index template may be
+ * rendered once every chunk has been, with the list of the shards.
+ */
+public class Shard
+{
+    /**
+     * The name of the collection attribute to split, from the results of the controller or a data file.
+     *
+     * @parameter
+     * @required
+     */
+    private String attribute;
+
+    /**
+     * The number of elements rendered to each file.
+     *
+     * @parameter default-value="1000"
+     */
+    private int size = 1000;
+
+    /**
+     * The name of a template in the same group that is rendered once with the attribute <code>shards</code>, a list
+     * with the <code>number</code>, <code>offset</code>, <code>size</code> and <code>file</code> of each shard, in
+     * place of the collection.
+     *
+     * @parameter
+     */
+    private String indexTemplate;
+
+    /**
+     * The path to the output file of the index template.
+     *
+     * @parameter
+     */
+    private File indexTarget;
+
+    public Shard()
+    {
+    }
+
+    /**
+     * Creates a shard without an index, as the plugin configuration would.
+     */
+    Shard(String attribute, int size)
+    {
+        this.attribute = attribute;
+        this.size = size;
+    }
+
+    public String getAttribute()
+    {
+        return this.attribute;
+    }
+
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    public String getIndexTemplate()
+    {
+        return this.indexTemplate;
+    }
+
+    public File getIndexFile(File baseDirectory)
+    {
+        return this.indexTarget.isAbsolute() ? this.indexTarget : new File(baseDirectory, this.indexTarget.getPath());
+    }
+
+    public void validate(Template template) throws MojoExecutionException
+    {
+        if(null == this.attribute)
+        {
+            throw new MojoExecutionException(String.format("The shard of template %s has no attribute.", template.getName()));
+        }
+        if(this.size < 1)
+        {
+            throw new MojoExecutionException(String.format("The shards of template %s must have at least one element, not %d.", template.getName(), this.size));
+        }
+        if(!template.getTarget().getPath().contains("${shard}"))
+        {
+            throw new MojoExecutionException(String.format("The target of the sharded template %s must contain ${shard}: %s", template.getName(), template.getTarget()));
+        }
+        if((null == this.indexTemplate) != (null == this.indexTarget))
+        {
+            throw new MojoExecutionException(String.format("The shard index of template %s needs both an indexTemplate and an indexTarget.", template.getName()));
+        }
+    }
+
+    /**
+     * Splits the collection into chunks as they are needed, so an iterator or stream is read one chunk at a time.  Each
+     * chunk is a copy, which can be serialized to key the output cache even when the collection can not.
+     */
+    public Iterator<List<?>> split(Object collection) throws MojoExecutionException
+    {
+        if(collection instanceof Supplier)
+        {
+            collection = ((Supplier<?>)collection).get();
+        }
+
+        if(collection instanceof List && collection instanceof RandomAccess)
+        {
+            return this.split((List<?>)collection);
+        }
+        else if(collection instanceof Object[])
+        {
+            return this.split(Arrays.asList((Object[])collection));
+        }
+        else if(collection instanceof Iterable)
+        {
+            return this.split(((Iterable<?>)collection).iterator());
+        }
+        else if(collection instanceof Iterator)
+        {
+            return this.split((Iterator<?>)collection);
+        }
+        else if(collection instanceof BaseStream)
+        {
+            return this.split(new StreamIterator((BaseStream<?, ?>)collection));
+        }
+        throw new MojoExecutionException(String.format("The attribute %s is %s, which can not be sharded; it must be a collection, an array, an iterator or a stream.",
+            this.attribute, null == collection ? "missing" : "a " + collection.getClass().getName()));
+    }
+
+    private Iterator<List<?>> split(final List<?> list)
+    {
+        return new Iterator<List<?>>()
+        {
+            private int offset = 0;
+
+            public boolean hasNext()
+            {
+                return this.offset < list.size();
+            }
+
+            public List<?> next()
+            {
+                if(!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                int end = Math.min(list.size(), this.offset + size);
+                List<?> chunk = new ArrayList<Object>(list.subList(this.offset, end));
+                this.offset = end;
+                return chunk;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private Iterator<List<?>> split(final Iterator<?> elements)
+    {
+        return new Iterator<List<?>>()
+        {
+            public boolean hasNext()
+            {
+                return elements.hasNext();
+            }
+
+            public List<?> next()
+            {
+                List<Object> chunk = new ArrayList<Object>(size);
+                while(chunk.size() < size && elements.hasNext())
+                {
+                    chunk.add(elements.next());
+                }
+                if(chunk.isEmpty())
+                {
+                    throw new NoSuchElementException();
+                }
+                return chunk;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.attribute + ":" + this.size + ":" + this.indexTemplate + ":" + this.indexTarget;
+    }
+}
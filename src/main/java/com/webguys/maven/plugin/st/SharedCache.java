@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values that outlive a single execution of the plugin, so that the modules of a reactor, and the builds of a Maven
+ * daemon, can reuse the work of the ones before them.  The cache lives as long as the plugin's class realm, which is
+ * shared by every module of a build that uses the same version of the plugin.
+ * <p>
+ * Each value is stored with a stamp of its inputs, and is replaced when it is acquired with a different stamp.  The
+ * least recently used values are evicted when there are more than the maximum size.  A value that is
+ * <code>Closeable</code> is closed once it has been replaced or evicted and every execution that acquired it has
+ * released it.
+ */
+public class SharedCache<V>
+{
+    public interface Factory<V>
+    {
+        V create();
+    }
+
+    private class Entry
+    {
+        private final String stamp;
+        private final V value;
+        private int references;
+        private boolean discarded;
+
+        private Entry(String stamp, V value)
+        {
+            this.stamp = stamp;
+            this.value = value;
+        }
+    }
+
+    private final String description;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final Map<V, Entry> acquired = new IdentityHashMap<V, Entry>();
+    private int maximumSize = 32;
+    private WeakReference<Object> scope = new WeakReference<Object>(null);
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    public SharedCache(String description)
+    {
+        this.description = description;
+    }
+
+    /**
+     * Starts using the cache for an execution.
+     *
+     * @param scope the object whose lifetime the values are kept for, such as the build request, or null to keep them
+     *              for as long as the JVM.  The cache is cleared when it is used for a different scope.
+     */
+    public synchronized void open(Object scope, int maximumSize)
+    {
+        if(null != scope && scope != this.scope.get())
+        {
+            this.clear();
+            this.scope = new WeakReference<Object>(scope);
+        }
+        this.maximumSize = Math.max(1, maximumSize);
+        this.evict();
+    }
+
+    /**
+     * @param stamp a digest of the inputs of the value; a stored value with a different stamp is replaced.
+     * @return the stored value, or the value made by the factory, which is then stored.  It must be released once it
+     *         is no longer used.
+     */
+    public synchronized V acquire(String key, String stamp, Factory<V> factory)
+    {
+        Entry entry = this.entries.get(key);
+        if(null != entry && entry.stamp.equals(stamp))
+        {
+            this.hits++;
+        }
+        else
+        {
+            if(null != entry)
+            {
+                this.invalidations++;
+                this.discard(this.entries.remove(key));
+            }
+            this.misses++;
+            entry = new Entry(stamp, factory.create());
+            this.entries.put(key, entry);
+            this.evict();
+        }
+
+        entry.references++;
+        this.acquired.put(entry.value, entry);
+        return entry.value;
+    }
+
+    public synchronized void release(V value)
+    {
+        Entry entry = this.acquired.get(value);
+        if(null == entry)
+        {
+            return;
+        }
+
+        entry.references--;
+        if(0 == entry.references)
+        {
+            this.acquired.remove(value);
+            if(entry.discarded)
+            {
+                close(entry.value);
+            }
+        }
+    }
+
+    /**
+     * Removes every value, closing those that are not in use.
+     */
+    public synchronized void clear()
+    {
+        List<Entry> removed = new ArrayList<Entry>(this.entries.values());
+        this.entries.clear();
+        for(Entry entry : removed)
+        {
+            this.discard(entry);
+        }
+    }
+
+    /**
+     * @return the number of hits and misses since the cache was created, in a few words.
+     */
+    public synchronized String summary()
+    {
+        return String.format("%d hits and %d misses", this.hits, this.misses);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder builder = new StringBuilder(String.format("%s: %d stored, %d hits, %d misses, %d invalidated, %d evicted",
+            this.description, this.entries.size(), this.hits, this.misses, this.invalidations, this.evictions));
+        for(Map.Entry<String, Entry> entry : this.entries.entrySet())
+        {
+            builder.append(String.format("%n  %s (%s, %d in use)", entry.getKey(), entry.getValue().stamp,
+                entry.getValue().references));
+        }
+        return builder.toString();
+    }
+
+    private void evict()
+    {
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while(this.entries.size() > this.maximumSize && iterator.hasNext())
+        {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            this.evictions++;
+            this.discard(eldest);
+        }
+    }
+
+    private void discard(Entry entry)
+    {
+        entry.discarded = true;
+        if(0 == entry.references)
+        {
+            close(entry.value);
+        }
+    }
+
+    private static void close(Object value)
+    {
+        if(value instanceof Closeable)
+        {
+            try
+            {
+                ((Closeable)value).close();
+            }
+            catch(IOException e)
+            {
+                // the value is no longer used, and the next execution will create another
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.BaseStream;
+
+/**
+ * Iterates the elements of a stream, closing the stream once the last element has been read.  ST renders an iterator
+ * as it reads it, so a stream of template attributes is consumed lazily rather than collected into a list first.
+ */
+public class StreamIterator implements Iterator<Object>, Closeable
+{
+    private final BaseStream<?, ?> stream;
+    private final Iterator<?> iterator;
+    private boolean closed;
+
+    public StreamIterator(BaseStream<?, ?> stream)
+    {
+        this.stream = stream;
+        this.iterator = stream.iterator();
+    }
+
+    public boolean hasNext()
+    {
+        if(this.closed)
+        {
+            return false;
+        }
+        if(this.iterator.hasNext())
+        {
+            return true;
+        }
+        this.close();
+        return false;
+    }
+
+    public Object next()
+    {
+        if(!this.hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return this.iterator.next();
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close()
+    {
+        if(!this.closed)
+        {
+            this.closed = true;
+            this.stream.close();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.stringtemplate.v4.Interpreter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STWriter;
+import org.stringtemplate.v4.misc.ErrorManager;
+
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+
+/**
+ * An interpreter that reads multi-valued attributes as they are written instead of collecting them first.  In
+ * addition to the values ST already iterates, any <code>Iterable</code> or <code>Stream</code> is iterated, and
+ * applying a template to an attribute (<code>&lt;rows:row()&gt;</code>) creates each instance of the template as it is
+ * written, so only the value being rendered has to be in memory.
+ * <p>
+ * A <code>Supplier</code> is a lazy value: it is called the first time the template writes, tests or iterates it, reads
+ * one of its properties or passes it to a function, and its value is kept for the rest of the render.  A value the
+ * template never uses is never computed.  The values of an iteration are resolved as they are read.
+ */
+public class StreamingInterpreter extends Interpreter
+{
+    private final STGroup group;
+
+    private final Map<Supplier<?>, Object> resolved = new IdentityHashMap<Supplier<?>, Object>();
+
+    private UncheckedIOException readFailure;
+
+    public StreamingInterpreter(STGroup group, ErrorManager errorManager)
+    {
+        super(group, errorManager, false);
+        this.group = group;
+    }
+
+    /**
+     * @return the first failure to read the values of an iteration, such as the records of a data file, which ST only
+     *         reports as an internal error; or null.
+     */
+    public UncheckedIOException getReadFailure()
+    {
+        return this.readFailure;
+    }
+
+    @Override
+    public Object convertAnythingIteratableToIterator(Object o)
+    {
+        o = this.resolve(o);
+        Object result;
+        if(o instanceof BaseStream)
+        {
+            result = new StreamIterator((BaseStream<?, ?>)o);
+        }
+        else if(o instanceof Iterable && !(o instanceof Collection))
+        {
+            result = ((Iterable<?>)o).iterator();
+        }
+        else
+        {
+            result = super.convertAnythingIteratableToIterator(o);
+        }
+        if(result instanceof Iterator && !(result instanceof ResolvingIterator))
+        {
+            return new ResolvingIterator((Iterator<?>)result);
+        }
+        return result;
+    }
+
+    @Override
+    protected boolean testAttributeTrue(Object a)
+    {
+        a = this.resolve(a);
+        if(a instanceof Iterable && !(a instanceof Collection))
+        {
+            return ((Iterable<?>)a).iterator().hasNext();
+        }
+        return super.testAttributeTrue(a);
+    }
+
+    @Override
+    protected int writeObject(STWriter out, ST self, Object o, String[] options)
+    {
+        return super.writeObject(out, self, this.resolve(o), options);
+    }
+
+    @Override
+    protected Object getObjectProperty(STWriter out, ST self, Object o, Object property)
+    {
+        return super.getObjectProperty(out, self, this.resolve(o), property);
+    }
+
+    // ST's class files are too old for javac to read their generic signatures, so an override has to use the raw types
+    @Override
+    @SuppressWarnings("rawtypes")
+    protected void rot_map(ST self, Object attr, List prototypes)
+    {
+        super.rot_map(self, this.resolve(attr), prototypes);
+    }
+
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected ST.AttributeList zip_map(ST self, List exprs, ST prototype)
+    {
+        if(null != exprs)
+        {
+            List<Object> values = exprs;
+            for(int i = 0; i < values.size(); i++)
+            {
+                values.set(i, this.resolve(values.get(i)));
+            }
+        }
+        return super.zip_map(self, exprs, prototype);
+    }
+
+    @Override
+    public Object first(Object v)
+    {
+        return super.first(this.resolve(v));
+    }
+
+    @Override
+    public Object last(Object v)
+    {
+        return super.last(this.resolve(v));
+    }
+
+    @Override
+    public Object rest(Object v)
+    {
+        return super.rest(this.resolve(v));
+    }
+
+    @Override
+    public Object trunc(Object v)
+    {
+        return super.trunc(this.resolve(v));
+    }
+
+    @Override
+    public Object strip(Object v)
+    {
+        return super.strip(this.resolve(v));
+    }
+
+    @Override
+    public Object reverse(Object v)
+    {
+        return super.reverse(this.resolve(v));
+    }
+
+    @Override
+    public Object length(Object v)
+    {
+        return super.length(this.resolve(v));
+    }
+
+    /**
+     * @return the value of a lazy value, computed the first time it is used in this render, or the value itself.
+     */
+    private Object resolve(Object o)
+    {
+        while(o instanceof Supplier)
+        {
+            Supplier<?> supplier = (Supplier<?>)o;
+            if(this.resolved.containsKey(supplier))
+            {
+                return this.resolved.get(supplier);
+            }
+
+            Object value = supplier.get();
+            this.resolved.put(supplier, value);
+            o = value;
+        }
+        return o;
+    }
+
+    private UncheckedIOException failed(UncheckedIOException e)
+    {
+        if(null == this.readFailure)
+        {
+            this.readFailure = e;
+        }
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected List rot_map_iterator(ST self, Iterator attr, List prototypes)
+    {
+        List<ST> templates = prototypes;
+        return new MappedValues(self, attr, templates);
+    }
+
+    /**
+     * Resolves the lazy values of an iteration as they are read.
+     */
+    private class ResolvingIterator implements Iterator<Object>
+    {
+        private final Iterator<?> values;
+
+        private ResolvingIterator(Iterator<?> values)
+        {
+            this.values = values;
+        }
+
+        public boolean hasNext()
+        {
+            try
+            {
+                return this.values.hasNext();
+            }
+            catch(UncheckedIOException e)
+            {
+                throw failed(e);
+            }
+        }
+
+        public Object next()
+        {
+            try
+            {
+                return resolve(this.values.next());
+            }
+            catch(UncheckedIOException e)
+            {
+                throw failed(e);
+            }
+        }
+
+        public void remove()
+        {
+            this.values.remove();
+        }
+    }
+
+    /**
+     * The instances of the templates applied to the values of an attribute.  The instances are created as the list is
+     * iterated, which is how ST writes them; the few functions that need the size or an index of the list read the
+     * rest of the values into memory.
+     */
+    private class MappedValues extends AbstractList<ST>
+    {
+        private final ST self;
+        private final Iterator<?> values;
+        private final List<ST> prototypes;
+        private final List<ST> mapped = new ArrayList<ST>();
+        private int index;
+        private int rotation;
+
+        private MappedValues(ST self, Iterator<?> values, List<ST> prototypes)
+        {
+            this.self = self;
+            this.values = values;
+            this.prototypes = prototypes;
+        }
+
+        @Override
+        public Iterator<ST> iterator()
+        {
+            if(!this.mapped.isEmpty())
+            {
+                return super.iterator();
+            }
+
+            return new Iterator<ST>()
+            {
+                public boolean hasNext()
+                {
+                    return values.hasNext();
+                }
+
+                public ST next()
+                {
+                    if(!values.hasNext())
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    return map(values.next());
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public ST get(int i)
+        {
+            this.readAll();
+            return this.mapped.get(i);
+        }
+
+        @Override
+        public int size()
+        {
+            this.readAll();
+            return this.mapped.size();
+        }
+
+        private void readAll()
+        {
+            while(this.values.hasNext())
+            {
+                this.mapped.add(this.map(this.values.next()));
+            }
+        }
+
+        private ST map(Object value)
+        {
+            if(null == value)
+            {
+                return null;
+            }
+
+            ST prototype = this.prototypes.get(this.rotation++ % this.prototypes.size());
+            ST st = group.createStringTemplateInternally(prototype);
+            setFirstArgument(this.self, st, value);
+            if(st.impl.isAnonSubtemplate)
+            {
+                st.add("i0", this.index);
+                st.add("i", this.index + 1);
+            }
+            this.index++;
+            return st;
+        }
+    }
+}
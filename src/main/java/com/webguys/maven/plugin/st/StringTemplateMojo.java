@@ -20,111 +20,35 @@
  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
- *
- * Created: 11/20/11 10:47 PM
  */
 
+
 package com.webguys.maven.plugin.st;
 
-import org.apache.maven.ProjectDependenciesResolver;
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugin.AbstractMojo;
-import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.project.MavenProject;
-import org.stringtemplate.v4.ST;
-import org.stringtemplate.v4.STGroup;
-import org.stringtemplate.v4.STGroupDir;
-import org.stringtemplate.v4.misc.ErrorBuffer;
-import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
-
-import java.io.File;
-import java.util.List;
-
-import static org.twdata.maven.mojoexecutor.MojoExecutor.executionEnvironment;
 
 /**
- * Executes string template using a given controller.
+ * Executes string template using a given controller.  The goal keeps no state outside of its own project, so the
+ * modules of a parallel build may render their templates at the same time.
  *
  * @goal render
+ * @requiresDependencyResolution compile
+ * @threadSafe
  */
-public class StringTemplateMojo extends AbstractMojo
+public class StringTemplateMojo extends AbstractStringTemplateMojo
 {
-    /**
-     * The Maven Project Object
-     *
-     * @parameter property="project"
-     * @required
-     * @readonly
-     */
-    private MavenProject project;
-
-    /**
-     * The Maven Session Object
-     *
-     * @parameter property="session"
-     * @required
-     * @readonly
-     */
-    private MavenSession session;
-
-    /**
-     * The Maven PluginManager Object
-     *
-     * @component
-     * @required
-     */
-    private BuildPluginManager pluginManager;
-
-    /**
-     * The Maven ProjectDependenciesResolver Object
-     *
-     * @component
-     * @required
-     */
-    private ProjectDependenciesResolver dependenciesResolver;
-
-    /**
-     * The collection of templates to render.
-     * @parameter
-     * @required
-     */
-    private List<Template> templates;
-
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException
     {
-        for(Template template : this.templates)
+        this.open();
+        try
         {
-            File templateDirectory = this.getTemplateDirectory(template);
-
-            STGroup group = new STGroupDir(templateDirectory.getAbsolutePath());
-            ErrorBuffer errorBuffer = new ErrorBuffer();
-            group.setListener(errorBuffer);
-            ST st = group.getInstanceOf(template.getName());
-
-            if(null == st || !errorBuffer.errors.isEmpty())
-            {
-                throw new MojoExecutionException(String.format("Unable to execute template. %n%s", errorBuffer.toString()));
-            }
-
-            ExecutionEnvironment executionEnvironment = executionEnvironment(this.project, this.session, this.pluginManager);
-            template.invokeController(st, executionEnvironment, this.dependenciesResolver, this.getLog());
-            template.installProperties(st);
-
-            template.render(st, this.project, this.getLog());
+            this.render(this.getTemplates());
         }
-    }
-
-    private File getTemplateDirectory(Template template)
-    {
-        File templateDirectory = template.getDirectory();
-        if(!templateDirectory.isAbsolute())
+        finally
         {
-            templateDirectory = new File(this.project.getBasedir(), templateDirectory.getPath());
+            this.close();
         }
-
-        return templateDirectory;
     }
 }
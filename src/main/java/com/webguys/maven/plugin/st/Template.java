@@ -24,31 +24,47 @@
 
 package com.webguys.maven.plugin.st;
 
-import org.apache.maven.ProjectDependenciesResolver;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.stringtemplate.v4.AutoIndentWriter;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.misc.ErrorBuffer;
+import org.stringtemplate.v4.misc.ErrorManager;
 import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Template
 {
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}]+)\\}");
+
     /**
-     * The path to the template file's parent directory.
+     * The path to the template file's parent directory.  Either this or <code>groupFile</code> must be set.
      *
      * @parameter
-     * @required
      */
     private File directory;
 
+    /**
+     * The path to a group file (<code>.stg</code>) that defines the template, along with the templates it uses.
+     *
+     * @parameter
+     */
+    private File groupFile;
+
     /**
      * The name of the template file to render.
      *
@@ -58,13 +74,22 @@ public class Template
     private String name;
 
     /**
-     * The path to the output file.
+     * The path to the output file.  When the path contains <code>${name}</code> placeholders it is a pattern, and the
+     * controller may return a collection of attribute maps; each of them is rendered to the file named by substituting
+     * its attributes into the pattern.
      *
      * @parameter
      * @required
      */
     private File target;
 
+    /**
+     * The character encoding of the output file.  Defaults to the plugin's <code>outputEncoding</code>.
+     *
+     * @parameter
+     */
+    private String encoding;
+
     /**
      * The class to invoke to provide data for the template.
      *
@@ -79,59 +104,488 @@ public class Template
      */
     private Map<String, String> properties;
 
+    /**
+     * Local JSON, CSV or <code>.properties</code> files whose contents are provided to the template as attributes.
+     *
+     * @parameter
+     */
+    private List<DataFile> dataFiles;
+
+    /**
+     * Splits a collection attribute into chunks that are rendered concurrently, each to the file named by replacing
+     * <code>${shard}</code> in the target with the chunk's number, starting from 1.
+     *
+     * @parameter
+     */
+    private Shard shard;
+
+    /**
+     * Templates that belong to a {@link TemplateSet} are rendered into a directory that the set adds to the project.
+     */
+    private boolean guessSourceRoot = true;
+
+    public Template()
+    {
+    }
+
+    /**
+     * Creates a template that is not configured on its own, such as one of the templates of a {@link TemplateSet}.
+     */
+    Template(File directory, String name, File target, String encoding, Controller controller, Map<String, String> properties, List<DataFile> dataFiles)
+    {
+        this.directory = directory;
+        this.name = name;
+        this.target = target;
+        this.encoding = encoding;
+        this.controller = controller;
+        this.properties = properties;
+        this.dataFiles = dataFiles;
+        this.guessSourceRoot = false;
+    }
+
     public File getDirectory()
     {
         return directory;
     }
 
+    public File getGroupFile()
+    {
+        return groupFile;
+    }
+
+    /**
+     * @return the group file or directory the template is loaded from, resolved against the base directory.
+     */
+    public File getSource(File baseDirectory) throws MojoExecutionException
+    {
+        if((null == this.directory) == (null == this.groupFile))
+        {
+            throw new MojoExecutionException(String.format("The template %s must have either a directory or a groupFile.", this.name));
+        }
+
+        File source = null == this.groupFile ? this.directory : this.groupFile;
+        if(!source.isAbsolute())
+        {
+            source = new File(baseDirectory, source.getPath());
+        }
+        return source;
+    }
+
     public String getName()
     {
         return name;
     }
 
-    public void invokeController(ST st, ExecutionEnvironment executionEnvironment, ProjectDependenciesResolver dependenciesResolver, Log log) throws MojoExecutionException
+    public File getTarget()
     {
-        if(null != this.controller)
+        return target;
+    }
+
+    public Shard getShard()
+    {
+        return this.shard;
+    }
+
+    public Controller getController()
+    {
+        return controller;
+    }
+
+    /**
+     * @return the results of the controller, or null if there is no controller.
+     */
+    public Object invokeController(ExecutionEnvironment executionEnvironment, ControllerResults results, ControllerClasspath classpath, Log log, Timings timings)
+        throws MojoExecutionException
+    {
+        if(null == this.controller)
+        {
+            return null;
+        }
+        return results.get(this.controller, executionEnvironment, classpath, log, timings);
+    }
+
+    /**
+     * @return the number of attributes added.
+     */
+    public int applyResults(ST st, Object results) throws MojoExecutionException
+    {
+        if(null == results)
+        {
+            return 0;
+        }
+        return this.controller.applyResults(st, results);
+    }
+
+    public void closeResults(Object results)
+    {
+        if(null != results)
+        {
+            this.controller.closeResults(results);
+        }
+    }
+
+    /**
+     * Is the target a pattern that names one output file for each result of the controller?
+     */
+    public boolean isFanOut()
+    {
+        return null == this.shard && PLACEHOLDER.matcher(this.target.getPath()).find();
+    }
+
+    /**
+     * Is a collection attribute split over several output files?
+     */
+    public boolean isSharded()
+    {
+        return null != this.shard;
+    }
+
+    /**
+     * @return the number of attributes added.
+     */
+    public int installProperties(ST st, boolean leaveOutUndeclared) throws MojoExecutionException
+    {
+        if(null == this.properties)
+        {
+            return 0;
+        }
+
+        int count = 0;
+        for(Entry<String, String> entry : this.properties.entrySet())
+        {
+            if(this.accepts(st, entry.getKey(), leaveOutUndeclared))
+            {
+                st.add(entry.getKey(), entry.getValue());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Can the attribute be added to the template?  A template that declares its arguments refuses any other.
+     */
+    private static boolean accepts(ST st, String name)
+    {
+        return !st.impl.hasFormalArgs || (null != st.impl.formalArguments && st.impl.formalArguments.containsKey(name));
+    }
+
+    /**
+     * @return true if the attribute can be added to the template, false if it is to be left out.
+     * @throws MojoExecutionException if the template does not declare the attribute and it is not to be left out.
+     */
+    private boolean accepts(ST st, String name, boolean leaveOutUndeclared) throws MojoExecutionException
+    {
+        if(accepts(st, name))
+        {
+            return true;
+        }
+        if(leaveOutUndeclared)
         {
-            this.controller.invoke(st, executionEnvironment, dependenciesResolver, log);
+            return false;
         }
+        throw new MojoExecutionException(describeUndeclared(st, this.name, name));
     }
 
-    public void installProperties(ST st)
+    static String describeUndeclared(ST st, String templateName, String name)
     {
+        return String.format("The property or data file %s is not an argument of the template %s, whose arguments are %s.", name, templateName,
+            null == st.impl.formalArguments ? "[]" : st.impl.formalArguments.keySet());
+    }
+
+    /**
+     * @return the names of the properties and data files that are not arguments of the template.
+     */
+    public List<String> getUndeclaredAttributes(ST st)
+    {
+        List<String> names = new ArrayList<String>();
         if(null != this.properties)
         {
-            for(Entry<String, String> entry : this.properties.entrySet())
+            for(String name : this.properties.keySet())
+            {
+                if(!accepts(st, name))
+                {
+                    names.add(name);
+                }
+            }
+        }
+        if(null != this.dataFiles)
+        {
+            for(DataFile dataFile : this.dataFiles)
+            {
+                if(!accepts(st, dataFile.getName()))
+                {
+                    names.add(dataFile.getName());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the files of the template's data files, resolved against the base directory.
+     */
+    public List<File> getDataFiles(File baseDirectory)
+    {
+        List<File> result = new ArrayList<File>();
+        if(null != this.dataFiles)
+        {
+            for(DataFile dataFile : this.dataFiles)
+            {
+                result.add(dataFile.getFile(baseDirectory));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the template's data files.
+     *
+     * @return the contents of each data file, by attribute name.
+     */
+    public Map<String, Object> loadData(File baseDirectory, Timings timings) throws MojoExecutionException
+    {
+        if(null == this.dataFiles)
+        {
+            return Collections.emptyMap();
+        }
+
+        long start = timings.start();
+        Map<String, Object> data = new LinkedHashMap<String, Object>();
+        try
+        {
+            for(DataFile dataFile : this.dataFiles)
+            {
+                data.put(dataFile.getName(), dataFile.load(baseDirectory));
+            }
+        }
+        catch(MojoExecutionException e)
+        {
+            this.closeData(data);
+            throw e;
+        }
+        finally
+        {
+            timings.stop(Timings.Phase.DATA_LOAD, start);
+        }
+        return data;
+    }
+
+    /**
+     * @return the number of attributes added.
+     */
+    public int installData(ST st, Map<String, Object> data, boolean leaveOutUndeclared) throws MojoExecutionException
+    {
+        int count = 0;
+        for(Entry<String, Object> entry : data.entrySet())
+        {
+            if(this.accepts(st, entry.getKey(), leaveOutUndeclared))
             {
                 st.add(entry.getKey(), entry.getValue());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Closes the files that data was still being read from.
+     */
+    public void closeData(Map<String, Object> data)
+    {
+        for(Object value : data.values())
+        {
+            if(value instanceof Closeable)
+            {
+                try
+                {
+                    ((Closeable)value).close();
+                }
+                catch(IOException e)
+                {
+                    // the data files are only read
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the fingerprint of everything this template's output depends on.
+     *
+     * @param inputs the digest of the template directory contents and the other inputs shared by all templates.
+     * @param controllerInputs the digest of the project sources and dependencies the controller may use.
+     * @return the fingerprint, or null if the inputs of the controller can not be located.
+     */
+    public String fingerprint(String inputs, String controllerInputs, MavenProject project) throws IOException
+    {
+        Fingerprint fingerprint = this.fingerprintConfiguration(inputs, project);
+        if(null != this.controller)
+        {
+            if(!this.controller.fingerprint(fingerprint, project))
+            {
+                return null;
             }
+            fingerprint.update(controllerInputs);
         }
+
+        return fingerprint.finish();
     }
 
-    public void render(ST st, MavenProject project, Log log) throws MojoExecutionException
+    /**
+     * Computes the fingerprint of everything this template's output depends on apart from its controller, for when the
+     * results of the controller are digested instead.
+     */
+    public String fingerprintWithoutController(String inputs, MavenProject project) throws IOException
+    {
+        return this.fingerprintConfiguration(inputs, project).finish();
+    }
+
+    private Fingerprint fingerprintConfiguration(String inputs, MavenProject project) throws IOException
     {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.update(inputs).update(this.name).update(this.encoding).update(this.properties).update(String.valueOf(this.shard));
+        if(null != this.dataFiles)
+        {
+            for(DataFile dataFile : this.dataFiles)
+            {
+                fingerprint.update(dataFile.getName()).update(dataFile.getEncoding()).updateFile(dataFile.getFile(project.getBasedir()));
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Renders the template to its target, leaving the target untouched when the content has not changed.
+     *
+     * @return true if the target was written, false if it already contained the rendered content.
+     */
+    public boolean render(ST st, File outputFile, Charset defaultCharset, Log log, Timings timings) throws MojoExecutionException
+    {
+        AtomicOutput output = new AtomicOutput(outputFile, this.getCharset(defaultCharset));
+        boolean committed = false;
         try
         {
-            File outputFile = this.prepareOutputFile(project.getBasedir());
-            this.prepareCompilerSourceRoot(outputFile, project, log);
-            FileWriter fileWriter = new FileWriter(outputFile);
+            long start = timings.start();
+            AutoIndentWriter writer = new AutoIndentWriter(output.open());
+            timings.stop(Timings.Phase.FILE_WRITE, start);
+
+            start = timings.start();
             ErrorBuffer listener = new ErrorBuffer();
-            st.write(new AutoIndentWriter(fileWriter), listener);
-            fileWriter.flush();
-            fileWriter.close();
+            StreamingInterpreter interpreter = new StreamingInterpreter(st.groupThatCreatedThisInstance, new ErrorManager(listener));
+            interpreter.exec(writer, st);
+            timings.stop(Timings.Phase.RENDERING, start);
 
+            if(null != interpreter.getReadFailure())
+            {
+                throw new MojoExecutionException(interpreter.getReadFailure().getMessage(), interpreter.getReadFailure());
+            }
             if(!listener.errors.isEmpty())
             {
                 throw new MojoExecutionException(listener.toString());
             }
+
+            start = timings.start();
+            boolean written = output.commit();
+            committed = true;
+            timings.stop(Timings.Phase.FILE_WRITE, start);
+            timings.addOutput(output.getSize());
+            if(!written)
+            {
+                log.debug(String.format("The output file %s is unchanged.", outputFile));
+            }
+            return written;
         }
         catch(IOException e)
         {
-            throw new MojoExecutionException(String.format("Unable to write output file: %s. (%s)", this.target.getAbsolutePath(), e.getMessage()), e);
+            throw new MojoExecutionException(String.format("Unable to write output file: %s. (%s)", outputFile.getAbsolutePath(), e.getMessage()), e);
+        }
+        catch(UncheckedIOException e)
+        {
+            // a data file that could not be read, which the message names
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        catch(RuntimeException e)
+        {
+            // thrown by the attributes, such as suppliers and data files, that are only read while rendering
+            throw new MojoExecutionException(String.format("Unable to render output file: %s. (%s)", outputFile.getAbsolutePath(), e), e);
+        }
+        finally
+        {
+            if(!committed)
+            {
+                output.discard();
+            }
         }
     }
 
-    private File prepareOutputFile(File baseDirectory) throws MojoExecutionException, IOException
+    /**
+     * Renders the template without writing it, and compares the output with the target.
+     *
+     * @return true if the target already contains the rendered content.
+     */
+    public boolean check(ST st, File outputFile, Charset defaultCharset, Timings timings) throws MojoExecutionException
+    {
+        OutputDigest output = new OutputDigest(outputFile, this.getCharset(defaultCharset));
+        try
+        {
+            long start = timings.start();
+            ErrorBuffer listener = new ErrorBuffer();
+            StreamingInterpreter interpreter = new StreamingInterpreter(st.groupThatCreatedThisInstance, new ErrorManager(listener));
+            interpreter.exec(new AutoIndentWriter(output.open()), st);
+            timings.stop(Timings.Phase.RENDERING, start);
+
+            if(null != interpreter.getReadFailure())
+            {
+                throw new MojoExecutionException(interpreter.getReadFailure().getMessage(), interpreter.getReadFailure());
+            }
+            if(!listener.errors.isEmpty())
+            {
+                throw new MojoExecutionException(listener.toString());
+            }
+
+            start = timings.start();
+            boolean matches = output.matches();
+            timings.stop(Timings.Phase.FILE_WRITE, start);
+            timings.addOutput(output.getSize());
+            return matches;
+        }
+        catch(IOException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to read output file: %s. (%s)", outputFile.getAbsolutePath(), e.getMessage()), e);
+        }
+        catch(UncheckedIOException e)
+        {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        catch(RuntimeException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to render output file: %s. (%s)", outputFile.getAbsolutePath(), e), e);
+        }
+    }
+
+    /**
+     * @return the compile source root that holds the output file, if it is a Java source file below
+     *         <code>generated-sources</code>, or null.
+     */
+    public String getCompileSourceRoot(File baseDirectory)
+    {
+        if(!this.guessSourceRoot)
+        {
+            return null;
+        }
+
+        File file = this.getOutputFile(baseDirectory);
+        String path = file.getPath();
+        if(file.getName().endsWith("java") && path.contains("generated-sources"))
+        {
+            int index = path.indexOf("generated-sources") + 18;
+            index = path.indexOf(File.separator, index);
+            return path.substring(0, index);
+        }
+        return null;
+    }
+
+    public File getOutputFile(File baseDirectory)
     {
         File outputFile = this.target;
         if(!outputFile.isAbsolute())
@@ -139,31 +593,59 @@ public class Template
             outputFile = new File(baseDirectory, outputFile.getPath());
         }
 
-        if(!outputFile.exists())
+        return outputFile;
+    }
+
+    /**
+     * Resolves the output file for one set of attributes by replacing the placeholders in the target pattern with the
+     * values of the attributes, or of the template's properties.
+     */
+    public File getOutputFile(File baseDirectory, Map<?, ?> attributes) throws MojoExecutionException
+    {
+        Matcher matcher = PLACEHOLDER.matcher(this.getOutputFile(baseDirectory).getPath());
+        StringBuffer path = new StringBuffer();
+        while(matcher.find())
         {
-            if(!outputFile.getParentFile().exists() && !outputFile.getParentFile().mkdirs())
+            String name = matcher.group(1);
+            Object value = attributes.get(name);
+            if(null == value && null != this.properties)
             {
-                throw new MojoExecutionException(String.format("Unable to fully create the output directory: %s", this.target.getParentFile()));
+                value = this.properties.get(name);
             }
-            if(!outputFile.createNewFile())
+            if(null == value)
             {
-                throw new MojoExecutionException(String.format("Unable to create the output file: %s", this.target));
+                throw new MojoExecutionException(String.format("The target pattern %s refers to the attribute %s, which has no value.", this.target, name));
             }
+            matcher.appendReplacement(path, Matcher.quoteReplacement(value.toString()));
         }
+        matcher.appendTail(path);
 
-        return outputFile;
+        return new File(path.toString());
     }
 
-    private void prepareCompilerSourceRoot(File file, MavenProject project, Log log)
+    /**
+     * Resolves the output file of a shard, replacing <code>${shard}</code> in the target pattern with its number and any
+     * other placeholders with the template's properties.
+     */
+    public File getShardFile(File baseDirectory, int number) throws MojoExecutionException
     {
-        String path = file.getPath();
-        if(file.getName().endsWith("java") && path.contains("generated-sources"))
+        return this.getOutputFile(baseDirectory, Collections.singletonMap("shard", number));
+    }
+
+    private Charset getCharset(Charset defaultCharset) throws MojoExecutionException
+    {
+        if(null == this.encoding)
         {
-            int index = path.indexOf("generated-sources") + 18;
-            index = path.indexOf(File.separator, index);
-            String sourceRoot = path.substring(0, index);
-            log.info("Adding compile source root: " + sourceRoot);
-            project.addCompileSourceRoot(sourceRoot);
+            return defaultCharset;
+        }
+
+        try
+        {
+            return Charset.forName(this.encoding);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(String.format("Unsupported output encoding: %s", this.encoding), e);
         }
     }
 }
@@ -0,0 +1,631 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.apache.maven.plugin.logging.Log;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.compiler.CompiledST;
+import org.stringtemplate.v4.compiler.FormalArgument;
+import org.stringtemplate.v4.misc.Interval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps the compiled templates of each template or group file in the work directory, so that later builds define them
+ * without lexing and parsing the file again.  An entry is keyed by the content of the file, its name and encoding, and
+ * the StringTemplate library that compiled it; any change to them compiles the file again.
+ * <p>
+ * {@link CompiledST} is not serializable, so the fields the interpreter uses are written by hand.  The token stream and
+ * syntax tree of a template are only used while it is compiled, and are not kept.
+ */
+public class TemplateCache
+{
+    /**
+     * The templates and dictionaries defined by loading one file.
+     */
+    public static class Entry
+    {
+        private final String main;
+        private final Map<String, CompiledST> templates;
+        private final Map<String, Map<String, Object>> dictionaries;
+
+        public Entry(String main, Map<String, CompiledST> templates, Map<String, Map<String, Object>> dictionaries)
+        {
+            this.main = main;
+            this.templates = templates;
+            this.dictionaries = dictionaries;
+        }
+
+        /**
+         * @return the name of the template the file is named after, or null for a group file.
+         */
+        public String getMain()
+        {
+            return this.main;
+        }
+
+        public Map<String, CompiledST> getTemplates()
+        {
+            return this.templates;
+        }
+
+        public Map<String, Map<String, Object>> getDictionaries()
+        {
+            return this.dictionaries;
+        }
+    }
+
+    private static final int FORMAT = 1;
+
+    private static final String COMPILER = describeCompiler();
+
+    private final File directory;
+    private final Log log;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public TemplateCache(File directory, Log log)
+    {
+        this.directory = directory;
+        this.log = log;
+    }
+
+    public String getKey(String prefix, String fileName, byte[] source, String encoding, char delimiterStartChar, char delimiterStopChar)
+    {
+        return new Fingerprint()
+            .update(COMPILER)
+            .update(String.valueOf(FORMAT))
+            .update(prefix)
+            .update(fileName)
+            .update(encoding)
+            .update(new String(new char[]{delimiterStartChar, delimiterStopChar}))
+            .update(source)
+            .finish();
+    }
+
+    public int getHits()
+    {
+        return this.hits.get();
+    }
+
+    public int getMisses()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the compiled templates of the file, belonging to the given group, or null if they are not in the cache.
+     */
+    public Entry read(String key, STGroup group)
+    {
+        File file = this.getFile(key);
+        if(!file.isFile())
+        {
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        try
+        {
+            InputStream input = new BufferedInputStream(new InflaterInputStream(new FileInputStream(file)));
+            try
+            {
+                Entry entry = new Reader(new DataInputStream(input), group).readEntry(key);
+                if(null == entry)
+                {
+                    this.misses.incrementAndGet();
+                }
+                else
+                {
+                    this.hits.incrementAndGet();
+                }
+                return entry;
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        catch(Exception e)
+        {
+            // a damaged or incompatible file only costs compiling the template again
+            this.log.warn(String.format("Unable to read the compiled template %s (%s)", file, e));
+            this.misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void write(String key, Entry entry)
+    {
+        String reason = getUncacheableReason(entry);
+        if(null != reason)
+        {
+            this.log.debug(String.format("The templates %s can not be cached: %s.", entry.getTemplates().keySet(), reason));
+            return;
+        }
+
+        File file = this.getFile(key);
+        File temporary = null;
+        try
+        {
+            if(!this.directory.isDirectory() && !this.directory.mkdirs())
+            {
+                throw new IOException(String.format("Unable to create the directory %s", this.directory));
+            }
+
+            temporary = File.createTempFile("." + file.getName(), ".tmp", this.directory);
+            DeflaterOutputStream output = new DeflaterOutputStream(new FileOutputStream(temporary), new Deflater(Deflater.BEST_SPEED));
+            try
+            {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output));
+                new Writer(data).writeEntry(key, entry);
+                data.flush();
+                output.finish();
+            }
+            finally
+            {
+                output.close();
+            }
+
+            try
+            {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temporary = null;
+        }
+        catch(IOException e)
+        {
+            this.log.warn(String.format("Unable to write the compiled template %s (%s)", file, e.getMessage()));
+        }
+        finally
+        {
+            if(null != temporary)
+            {
+                try
+                {
+                    Files.deleteIfExists(temporary.toPath());
+                }
+                catch(IOException ignored)
+                {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private File getFile(String key)
+    {
+        return new File(this.directory, key + ".cst.z");
+    }
+
+    /**
+     * Dictionaries may hold templates, and default values of arguments may be any object, which can not be written.
+     */
+    private static String getUncacheableReason(Entry entry)
+    {
+        for(Map.Entry<String, Map<String, Object>> dictionary : entry.getDictionaries().entrySet())
+        {
+            for(Object value : dictionary.getValue().values())
+            {
+                if(!isSimpleValue(value))
+                {
+                    return String.format("the dictionary %s contains a %s", dictionary.getKey(), value.getClass().getName());
+                }
+            }
+        }
+        for(CompiledST code : entry.getTemplates().values())
+        {
+            if(null != code.formalArguments)
+            {
+                for(Object value : code.formalArguments.values())
+                {
+                    FormalArgument argument = (FormalArgument)value;
+                    if(!isSimpleValue(argument.defaultValue))
+                    {
+                        return String.format("the argument %s of %s has a default value of type %s", argument.name, code.name, argument.defaultValue.getClass().getName());
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSimpleValue(Object value)
+    {
+        return null == value || value instanceof String || value instanceof Boolean;
+    }
+
+    /**
+     * The version of StringTemplate is not filled in by its build, so the location of the jar stands in for it.
+     */
+    private static String describeCompiler()
+    {
+        CodeSource source = ST.class.getProtectionDomain().getCodeSource();
+        return ST.VERSION + File.pathSeparator + (null == source ? "unknown" : String.valueOf(source.getLocation()));
+    }
+
+    private static class Writer
+    {
+        private final DataOutputStream output;
+        private final Map<CompiledST, Integer> ids = new IdentityHashMap<CompiledST, Integer>();
+
+        private Writer(DataOutputStream output)
+        {
+            this.output = output;
+        }
+
+        private void writeEntry(String key, Entry entry) throws IOException
+        {
+            this.output.writeUTF(key);
+            this.writeString(entry.getMain());
+
+            this.output.writeInt(entry.getTemplates().size());
+            for(Map.Entry<String, CompiledST> template : entry.getTemplates().entrySet())
+            {
+                this.writeString(template.getKey());
+                this.writeTemplate(template.getValue());
+            }
+
+            this.output.writeInt(entry.getDictionaries().size());
+            for(Map.Entry<String, Map<String, Object>> dictionary : entry.getDictionaries().entrySet())
+            {
+                this.writeString(dictionary.getKey());
+                this.output.writeInt(dictionary.getValue().size());
+                for(Map.Entry<String, Object> value : dictionary.getValue().entrySet())
+                {
+                    this.writeString(value.getKey());
+                    this.writeValue(value.getValue());
+                }
+            }
+        }
+
+        /**
+         * Writes a template the first time it is seen, and only its id afterwards, since subtemplates are referred to by
+         * their enclosing template as well as by the group.
+         */
+        @SuppressWarnings("unchecked")
+        private void writeTemplate(CompiledST code) throws IOException
+        {
+            if(null == code)
+            {
+                this.output.writeInt(-1);
+                return;
+            }
+            Integer id = this.ids.get(code);
+            if(null != id)
+            {
+                this.output.writeInt(id);
+                return;
+            }
+            id = this.ids.size();
+            this.ids.put(code, id);
+            this.output.writeInt(id);
+
+            this.writeString(code.name);
+            this.writeString(code.template);
+            this.writeToken(code.templateDefStartToken);
+
+            if(null == code.formalArguments)
+            {
+                this.output.writeInt(-1);
+            }
+            else
+            {
+                List<FormalArgument> arguments = new ArrayList<FormalArgument>(code.formalArguments.values());
+                this.output.writeInt(arguments.size());
+                for(FormalArgument argument : arguments)
+                {
+                    this.writeString(argument.name);
+                    this.output.writeInt(argument.index);
+                    this.writeToken(argument.defaultValueToken);
+                    this.writeValue(argument.defaultValue);
+                    this.writeTemplate(argument.compiledDefaultValue);
+                }
+            }
+            this.output.writeBoolean(code.hasFormalArgs);
+            this.output.writeInt(code.numberOfArgsWithDefaultValues);
+
+            if(null == code.implicitlyDefinedTemplates)
+            {
+                this.output.writeInt(-1);
+            }
+            else
+            {
+                this.output.writeInt(code.implicitlyDefinedTemplates.size());
+                for(Object sub : code.implicitlyDefinedTemplates)
+                {
+                    this.writeTemplate((CompiledST)sub);
+                }
+            }
+
+            this.output.writeBoolean(code.isRegion);
+            this.output.writeInt(null == code.regionDefType ? -1 : code.regionDefType.ordinal());
+            this.output.writeBoolean(code.isAnonSubtemplate);
+
+            if(null == code.strings)
+            {
+                this.output.writeInt(-1);
+            }
+            else
+            {
+                this.output.writeInt(code.strings.length);
+                for(String string : code.strings)
+                {
+                    this.writeString(string);
+                }
+            }
+
+            this.output.writeInt(code.codeSize);
+            this.output.write(code.instrs, 0, code.codeSize);
+
+            this.output.writeInt(code.sourceMap.length);
+            for(Interval interval : code.sourceMap)
+            {
+                this.output.writeBoolean(null != interval);
+                if(null != interval)
+                {
+                    this.output.writeInt(interval.a);
+                    this.output.writeInt(interval.b);
+                }
+            }
+        }
+
+        private void writeToken(Token token) throws IOException
+        {
+            this.output.writeBoolean(null != token);
+            if(null != token)
+            {
+                this.output.writeInt(token.getType());
+                this.writeString(token.getText());
+                this.output.writeInt(token.getLine());
+                this.output.writeInt(token.getCharPositionInLine());
+            }
+        }
+
+        private void writeValue(Object value) throws IOException
+        {
+            if(value instanceof Boolean)
+            {
+                this.output.writeByte('b');
+                this.output.writeBoolean((Boolean)value);
+            }
+            else if(value instanceof String)
+            {
+                this.output.writeByte('s');
+                this.writeString((String)value);
+            }
+            else
+            {
+                this.output.writeByte('n');
+            }
+        }
+
+        /**
+         * Templates may be longer than the 64K limit of {@link DataOutputStream#writeUTF}.
+         */
+        private void writeString(String value) throws IOException
+        {
+            if(null == value)
+            {
+                this.output.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes("UTF-8");
+            this.output.writeInt(bytes.length);
+            this.output.write(bytes);
+        }
+    }
+
+    private static class Reader
+    {
+        private final DataInputStream input;
+        private final STGroup group;
+        private final List<CompiledST> templates = new ArrayList<CompiledST>();
+
+        private Reader(DataInputStream input, STGroup group)
+        {
+            this.input = input;
+            this.group = group;
+        }
+
+        private Entry readEntry(String key) throws IOException
+        {
+            if(!key.equals(this.input.readUTF()))
+            {
+                return null;
+            }
+            String main = this.readString();
+
+            int count = this.input.readInt();
+            Map<String, CompiledST> templates = new LinkedHashMap<String, CompiledST>();
+            for(int i = 0; i < count; i++)
+            {
+                String name = this.readString();
+                templates.put(name, this.readTemplate());
+            }
+
+            count = this.input.readInt();
+            Map<String, Map<String, Object>> dictionaries = new LinkedHashMap<String, Map<String, Object>>();
+            for(int i = 0; i < count; i++)
+            {
+                String name = this.readString();
+                int size = this.input.readInt();
+                Map<String, Object> dictionary = new LinkedHashMap<String, Object>();
+                for(int j = 0; j < size; j++)
+                {
+                    String entryKey = this.readString();
+                    dictionary.put(entryKey, this.readValue());
+                }
+                dictionaries.put(name, dictionary);
+            }
+
+            return new Entry(main, templates, dictionaries);
+        }
+
+        @SuppressWarnings("unchecked")
+        private CompiledST readTemplate() throws IOException
+        {
+            int id = this.input.readInt();
+            if(-1 == id)
+            {
+                return null;
+            }
+            if(id < this.templates.size())
+            {
+                return this.templates.get(id);
+            }
+
+            CompiledST code = new CompiledST();
+            this.templates.add(code);
+            code.nativeGroup = this.group;
+            code.name = this.readString();
+            code.template = this.readString();
+            code.templateDefStartToken = this.readToken();
+
+            int count = this.input.readInt();
+            if(-1 != count)
+            {
+                code.formalArguments = Collections.synchronizedMap(new LinkedHashMap<String, FormalArgument>());
+                for(int i = 0; i < count; i++)
+                {
+                    FormalArgument argument = new FormalArgument(this.readString());
+                    argument.index = this.input.readInt();
+                    argument.defaultValueToken = this.readToken();
+                    argument.defaultValue = this.readValue();
+                    argument.compiledDefaultValue = this.readTemplate();
+                    code.formalArguments.put(argument.name, argument);
+                }
+            }
+            code.hasFormalArgs = this.input.readBoolean();
+            code.numberOfArgsWithDefaultValues = this.input.readInt();
+
+            count = this.input.readInt();
+            if(-1 != count)
+            {
+                code.implicitlyDefinedTemplates = new ArrayList<CompiledST>(count);
+                for(int i = 0; i < count; i++)
+                {
+                    code.implicitlyDefinedTemplates.add(this.readTemplate());
+                }
+            }
+
+            code.isRegion = this.input.readBoolean();
+            int regionDefType = this.input.readInt();
+            code.regionDefType = -1 == regionDefType ? null : ST.RegionType.values()[regionDefType];
+            code.isAnonSubtemplate = this.input.readBoolean();
+
+            count = this.input.readInt();
+            if(-1 != count)
+            {
+                code.strings = new String[count];
+                for(int i = 0; i < count; i++)
+                {
+                    code.strings[i] = this.readString();
+                }
+            }
+
+            code.codeSize = this.input.readInt();
+            code.instrs = new byte[code.codeSize];
+            this.input.readFully(code.instrs);
+
+            code.sourceMap = new Interval[this.input.readInt()];
+            for(int i = 0; i < code.sourceMap.length; i++)
+            {
+                if(this.input.readBoolean())
+                {
+                    code.sourceMap[i] = new Interval(this.input.readInt(), this.input.readInt());
+                }
+            }
+            return code;
+        }
+
+        private Token readToken() throws IOException
+        {
+            if(!this.input.readBoolean())
+            {
+                return null;
+            }
+            CommonToken token = new CommonToken(this.input.readInt(), this.readString());
+            token.setLine(this.input.readInt());
+            token.setCharPositionInLine(this.input.readInt());
+            return token;
+        }
+
+        private Object readValue() throws IOException
+        {
+            switch(this.input.readByte())
+            {
+                case 'b':
+                    return this.input.readBoolean();
+                case 's':
+                    return this.readString();
+                default:
+                    return null;
+            }
+        }
+
+        private String readString() throws IOException
+        {
+            int length = this.input.readInt();
+            if(-1 == length)
+            {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            this.input.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.webguys.maven.plugin.st;
+
+import org.antlr.runtime.ANTLRInputStream;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STErrorListener;
+import org.stringtemplate.v4.STGroupDir;
+import org.stringtemplate.v4.compiler.CompiledST;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+import org.stringtemplate.v4.misc.STMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A template directory group that can be shared by templates rendered on several threads.  Templates are loaded and
+ * compiled once, under the group's lock, and the errors reported while loading a template are remembered so that every
+ * template that refers to it reports them.
+ * <p>
+ * The group can also be made from a single group file, whose templates are all loaded the first time one of them is
+ * used.  When a {@link TemplateCache} is given to a lookup, the template and group files loaded by it are only compiled
+ * when they are not in it.  The cache is given per lookup because a group can be shared by executions whose caches are
+ * in different modules; files loaded while rendering, outside of a lookup, are always compiled.
+ */
+public class TemplateGroup extends STGroupDir
+{
+    private final Map<String, List<STMessage>> loadErrors = new HashMap<String, List<STMessage>>();
+
+    private TemplateCache cache;
+
+    private final File groupFile;
+
+    private boolean groupFileLoaded = false;
+
+    /**
+     * @param source a directory of template files, or a group file.
+     */
+    public TemplateGroup(File source, String encoding)
+    {
+        super(getRoot(source).getAbsolutePath(), encoding, '<', '>');
+        this.setListener(new ErrorBuffer());
+        this.groupFile = isGroupFile(source) ? source.getAbsoluteFile() : null;
+    }
+
+    public static boolean isGroupFile(File source)
+    {
+        return source.getName().endsWith(".stg") && !source.isDirectory();
+    }
+
+    /**
+     * @return the directory that holds the files of the group: the source itself, or the directory of a group file.
+     */
+    public static File getRoot(File source)
+    {
+        return isGroupFile(source) ? source.getAbsoluteFile().getParentFile() : source;
+    }
+
+    /**
+     * Creates an instance of the named template, adding any errors from loading it to the given buffer.
+     *
+     * @param cache the cache of compiled templates, or null to compile every file that is loaded.
+     */
+    public synchronized ST getInstanceOf(String name, ErrorBuffer errors, TemplateCache cache)
+    {
+        ErrorBuffer buffer = new ErrorBuffer();
+        this.setListener(buffer);
+        this.cache = cache;
+        ST st;
+        try
+        {
+            st = this.getInstanceOf(name);
+        }
+        finally
+        {
+            this.setListener(new ErrorBuffer());
+            this.cache = null;
+        }
+
+        if(!buffer.errors.isEmpty())
+        {
+            List<STMessage> messages = new ArrayList<STMessage>(buffer.errors.size());
+            for(Object message : buffer.errors)
+            {
+                messages.add((STMessage)message);
+            }
+            this.loadErrors.put(name, messages);
+        }
+        List<STMessage> previous = this.loadErrors.get(name);
+        if(null != previous)
+        {
+            for(STMessage message : previous)
+            {
+                // the buffer keeps every kind of message in the same list
+                errors.compileTimeError(message);
+            }
+        }
+
+        return st;
+    }
+
+    @Override
+    public CompiledST lookupTemplate(String name)
+    {
+        CompiledST code = this.rawGetTemplate(name);
+        if(null != code && NOT_FOUND_ST != code)
+        {
+            return code;
+        }
+
+        synchronized(this)
+        {
+            return super.lookupTemplate(name);
+        }
+    }
+
+    @Override
+    protected CompiledST load(String name)
+    {
+        if(null == this.groupFile)
+        {
+            return super.load(name);
+        }
+
+        if(!this.groupFileLoaded)
+        {
+            this.groupFileLoaded = true;
+            try
+            {
+                this.loadGroupFile("", this.groupFile.toURI().toURL().toString());
+            }
+            catch(MalformedURLException e)
+            {
+                this.errMgr.internalError(null, "bad URL: " + this.groupFile, e);
+            }
+        }
+        return this.rawGetTemplate(name);
+    }
+
+    @Override
+    public synchronized void unload()
+    {
+        super.unload();
+        this.groupFileLoaded = false;
+    }
+
+    @Override
+    public CompiledST loadTemplateFile(String prefix, String fileName)
+    {
+        byte[] source;
+        try
+        {
+            source = null == this.cache ? null : read(new URL(this.root + "/" + fileName));
+        }
+        catch(IOException e)
+        {
+            // let the group report the missing file the way it always does
+            source = null;
+        }
+        if(null == source)
+        {
+            return super.loadTemplateFile(prefix, fileName);
+        }
+
+        String key = this.cache.getKey(prefix, fileName, source, this.encoding, this.delimiterStartChar, this.delimiterStopChar);
+        TemplateCache.Entry entry = this.cache.read(key, this);
+        if(null != entry)
+        {
+            this.define(entry);
+            return this.rawGetTemplate(entry.getMain());
+        }
+
+        Definitions before = new Definitions();
+        CompiledST code;
+        try
+        {
+            ANTLRInputStream input = new ANTLRInputStream(new ByteArrayInputStream(source), this.encoding);
+            input.name = fileName;
+            code = this.loadTemplateFile(prefix, fileName, input);
+        }
+        catch(IOException e)
+        {
+            return super.loadTemplateFile(prefix, fileName);
+        }
+        if(null != code)
+        {
+            before.store(key, code);
+        }
+        return code;
+    }
+
+    @Override
+    public void loadGroupFile(String prefix, String fileName)
+    {
+        byte[] source;
+        try
+        {
+            source = null == this.cache ? null : read(new URL(fileName));
+        }
+        catch(IOException e)
+        {
+            source = null;
+        }
+        if(null == source)
+        {
+            super.loadGroupFile(prefix, fileName);
+            return;
+        }
+
+        String key = this.cache.getKey(prefix, fileName, source, this.encoding, this.delimiterStartChar, this.delimiterStopChar);
+        TemplateCache.Entry entry = this.cache.read(key, this);
+        if(null != entry)
+        {
+            this.define(entry);
+            return;
+        }
+
+        Definitions before = new Definitions();
+        super.loadGroupFile(prefix, fileName);
+        before.store(key, null);
+    }
+
+    private void define(TemplateCache.Entry entry)
+    {
+        for(Map.Entry<String, CompiledST> template : entry.getTemplates().entrySet())
+        {
+            CompiledST code = template.getValue();
+            this.rawDefineTemplate(template.getKey(), code, code.templateDefStartToken);
+        }
+        for(Map.Entry<String, Map<String, Object>> dictionary : entry.getDictionaries().entrySet())
+        {
+            this.defineDictionary(dictionary.getKey(), dictionary.getValue());
+        }
+    }
+
+    private static byte[] read(URL url) throws IOException
+    {
+        InputStream input = url.openStream();
+        try
+        {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while(-1 != (count = input.read(buffer)))
+            {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * What the group defined before a file was loaded, to tell which templates and dictionaries the file defined.
+     */
+    private class Definitions
+    {
+        private final Set<CompiledST> templates = Collections.newSetFromMap(new IdentityHashMap<CompiledST, Boolean>());
+        private final Set<String> dictionaries = new HashSet<String>();
+        private final int imports;
+        private final int errors;
+
+        @SuppressWarnings("unchecked")
+        private Definitions()
+        {
+            this.templates.addAll(TemplateGroup.this.templates.values());
+            this.dictionaries.addAll(TemplateGroup.this.dictionaries.keySet());
+            this.imports = null == TemplateGroup.this.imports ? 0 : TemplateGroup.this.imports.size();
+            this.errors = this.countErrors();
+        }
+
+        private int countErrors()
+        {
+            STErrorListener listener = TemplateGroup.this.getListener();
+            return listener instanceof ErrorBuffer ? ((ErrorBuffer)listener).errors.size() : -1;
+        }
+
+        /**
+         * Puts what the file defined in the cache, unless loading it failed or imported other groups, which are not
+         * cached.
+         */
+        @SuppressWarnings("unchecked")
+        private void store(String key, CompiledST main)
+        {
+            int imports = null == TemplateGroup.this.imports ? 0 : TemplateGroup.this.imports.size();
+            int errors = this.countErrors();
+            if(-1 == errors || errors != this.errors || imports != this.imports)
+            {
+                return;
+            }
+
+            String mainName = null;
+            Map<String, CompiledST> templates = new LinkedHashMap<String, CompiledST>();
+            // the maps of STGroup are raw types
+            for(Object item : TemplateGroup.this.templates.entrySet())
+            {
+                Map.Entry<?, ?> template = (Map.Entry<?, ?>)item;
+                CompiledST code = (CompiledST)template.getValue();
+                if(NOT_FOUND_ST != code && !this.templates.contains(code))
+                {
+                    templates.put((String)template.getKey(), code);
+                }
+                if(null != main && main == code)
+                {
+                    mainName = (String)template.getKey();
+                }
+            }
+            if(null != main && null == mainName)
+            {
+                return;
+            }
+
+            Map<String, Map<String, Object>> dictionaries = new LinkedHashMap<String, Map<String, Object>>();
+            for(Object item : TemplateGroup.this.dictionaries.entrySet())
+            {
+                Map.Entry<?, ?> dictionary = (Map.Entry<?, ?>)item;
+                if(!this.dictionaries.contains(dictionary.getKey()))
+                {
+                    dictionaries.put((String)dictionary.getKey(), (Map<String, Object>)dictionary.getValue());
+                }
+            }
+
+            TemplateGroup.this.cache.write(key, new TemplateCache.Entry(mainName, templates, dictionaries));
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every template file below a directory, each rendered to the same relative path below an output directory.  The
+ * templates of a set share one group, and its output directory is added to the project once rather than guessed from
+ * each output file.
+ */
+public class TemplateSet
+{
+    /**
+     * The directory holding the template files.
+     *
+     * @parameter
+     * @required
+     */
+    private File directory;
+
+    /**
+     * The directory the templates are rendered to.  The template <code>com/example/Robot.st</code> is rendered to
+     * <code>com/example/Robot.java</code> below it.
+     *
+     * @parameter
+     * @required
+     */
+    private File outputDirectory;
+
+    /**
+     * The extension of the rendered files.
+     *
+     * @parameter default-value="java"
+     */
+    private String extension = "java";
+
+    /**
+     * Glob patterns, relative to the directory, of template files that are only used by other templates and are not
+     * rendered themselves, e.g. <code>**&#47;_*.st</code>.
+     *
+     * @parameter
+     */
+    private List<String> excludes;
+
+    /**
+     * How the output directory is added to the project: <code>compile</code> as a compile source root,
+     * <code>resource</code> as a resource directory, or <code>none</code>.
+     *
+     * @parameter default-value="compile"
+     */
+    private String rootType = "compile";
+
+    /**
+     * The character encoding of the rendered files.  Defaults to the plugin's <code>outputEncoding</code>.
+     *
+     * @parameter
+     */
+    private String encoding;
+
+    /**
+     * The class to invoke to provide data for every template of the set.  It is invoked once and its results are shared.
+     *
+     * @parameter
+     */
+    private Controller controller;
+
+    /**
+     * The static properties to be provided to every template of the set.
+     *
+     * @parameter
+     */
+    private Map<String, String> properties;
+
+    /**
+     * Local JSON, CSV or <code>.properties</code> files whose contents are provided to every template of the set.
+     *
+     * @parameter
+     */
+    private List<DataFile> dataFiles;
+
+    public File getDirectory(File baseDirectory)
+    {
+        return resolve(baseDirectory, this.directory);
+    }
+
+    public File getOutputDirectory(File baseDirectory)
+    {
+        return resolve(baseDirectory, this.outputDirectory);
+    }
+
+    public String getRootType() throws MojoExecutionException
+    {
+        String type = null == this.rootType ? "compile" : this.rootType;
+        if(!"compile".equals(type) && !"resource".equals(type) && !"none".equals(type))
+        {
+            throw new MojoExecutionException(String.format("Unknown root type for the template set %s: %s (expected compile, resource or none)", this.directory, type));
+        }
+        return type;
+    }
+
+    /**
+     * Finds the template files of the set, in a stable order, and creates a template for each of them.
+     */
+    public List<Template> expand(File baseDirectory) throws MojoExecutionException
+    {
+        final Path root = this.getDirectory(baseDirectory).toPath();
+        if(!Files.isDirectory(root))
+        {
+            throw new MojoExecutionException(String.format("The template set directory %s does not exist.", root));
+        }
+
+        FileSystem fileSystem = root.getFileSystem();
+        final List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+        if(null != this.excludes)
+        {
+            for(String exclude : this.excludes)
+            {
+                matchers.add(fileSystem.getPathMatcher("glob:" + exclude));
+            }
+        }
+
+        final List<String> names = new ArrayList<String>();
+        try
+        {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+                {
+                    Path relative = root.relativize(file);
+                    String path = relative.toString().replace(File.separatorChar, '/');
+                    if(path.endsWith(".st") && !isExcluded(relative, matchers))
+                    {
+                        names.add(path.substring(0, path.length() - ".st".length()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch(IOException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to list the templates in %s (%s)", root, e.getMessage()), e);
+        }
+        Collections.sort(names);
+
+        File outputDirectory = this.getOutputDirectory(baseDirectory);
+        List<Template> templates = new ArrayList<Template>(names.size());
+        for(String name : names)
+        {
+            File target = new File(outputDirectory, name.replace('/', File.separatorChar) + "." + this.extension);
+            templates.add(new Template(root.toFile(), name, target, this.encoding, this.controller, this.properties, this.dataFiles));
+        }
+        return templates;
+    }
+
+    private static boolean isExcluded(Path path, List<PathMatcher> matchers)
+    {
+        for(PathMatcher matcher : matchers)
+        {
+            if(matcher.matches(path))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static File resolve(File baseDirectory, File file)
+    {
+        return file.isAbsolute() ? file : new File(baseDirectory, file.getPath());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(this.directory);
+    }
+}
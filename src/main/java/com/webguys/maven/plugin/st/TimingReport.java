@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the timings of the templates rendered by an execution, writes them to a JSON report and logs the slowest
+ * templates.  Work that is shared by all templates, like compiling the controllers in memory, is reported separately.
+ */
+public class TimingReport
+{
+    private final Timings execution = new Timings("execution", null);
+    private final List<Timings> templates = new ArrayList<Timings>();
+    private final long start = System.nanoTime();
+
+    public Timings getExecution()
+    {
+        return this.execution;
+    }
+
+    public synchronized Timings add(Template template)
+    {
+        Timings timings = new Timings(template.getName(), template.getTarget().getPath());
+        this.templates.add(timings);
+        return timings;
+    }
+
+    /**
+     * Writes the report as JSON.  Times are in milliseconds.
+     */
+    public synchronized void write(File file, String project) throws IOException
+    {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if(!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException(String.format("Unable to create the directory %s", directory));
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try
+        {
+            writer.write("{\n");
+            writer.write(String.format("  \"project\": %s,%n", quote(project)));
+            writer.write(String.format("  \"elapsedMillis\": %d,%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.start)));
+            writer.write(String.format("  \"execution\": {%n    \"phases\": %s%n  },%n", phases(this.execution)));
+            writer.write("  \"templates\": [");
+            for(int i = 0; i < this.templates.size(); i++)
+            {
+                Timings timings = this.templates.get(i);
+                writer.write(i == 0 ? "\n" : ",\n");
+                writer.write("    {\n");
+                writer.write(String.format("      \"name\": %s,%n", quote(timings.getName())));
+                writer.write(String.format("      \"target\": %s,%n", quote(timings.getTarget())));
+                writer.write(String.format("      \"skipped\": %s,%n", timings.isSkipped()));
+                writer.write(String.format("      \"totalMillis\": %d,%n", timings.getTotalMillis()));
+                writer.write(String.format("      \"phases\": %s,%n", phases(timings)));
+                writer.write(String.format("      \"files\": %d,%n", timings.getFiles()));
+                writer.write(String.format("      \"bytes\": %d,%n", timings.getBytes()));
+                writer.write(String.format("      \"attributes\": %d,%n", timings.getAttributes()));
+                writer.write(String.format("      \"bytesPerSecond\": %d%n", bytesPerSecond(timings)));
+                writer.write("    }");
+            }
+            writer.write(this.templates.isEmpty() ? "]\n" : "\n  ]\n");
+            writer.write("}\n");
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Logs the templates that took the longest, along with the phase that took the most of their time.  When there are
+     * no more templates than the count, every template is listed, so the list is only logged at debug level.
+     */
+    public synchronized void summarize(Log log, int count)
+    {
+        boolean selected = this.templates.size() > count;
+        if(!selected && !log.isDebugEnabled())
+        {
+            return;
+        }
+
+        List<Timings> slowest = new ArrayList<Timings>(this.templates);
+        Collections.sort(slowest, new Comparator<Timings>()
+        {
+            public int compare(Timings left, Timings right)
+            {
+                return Long.compare(right.getTotalMillis(), left.getTotalMillis());
+            }
+        });
+
+        slowest = slowest.subList(0, Math.min(count, slowest.size()));
+        if(slowest.isEmpty())
+        {
+            return;
+        }
+
+        log(log, selected, String.format("Slowest %d templates:", slowest.size()));
+        for(Timings timings : slowest)
+        {
+            Timings.Phase phase = timings.getSlowestPhase();
+            log(log, selected, String.format("%8d ms  %s -> %s (%s: %d ms, %d files, %d bytes)", timings.getTotalMillis(), timings.getName(), timings.getTarget(),
+                phase.getDescription(), timings.getMillis(phase), timings.getFiles(), timings.getBytes()));
+        }
+    }
+
+    private static void log(Log log, boolean info, String message)
+    {
+        if(info)
+        {
+            log.info(message);
+        }
+        else
+        {
+            log.debug(message);
+        }
+    }
+
+    private static String phases(Timings timings)
+    {
+        StringBuilder result = new StringBuilder("{");
+        for(Timings.Phase phase : Timings.Phase.values())
+        {
+            if(phase.ordinal() > 0)
+            {
+                result.append(", ");
+            }
+            result.append('"').append(phase.getKey()).append("\": ").append(timings.getMillis(phase));
+        }
+        return result.append('}').toString();
+    }
+
+    private static long bytesPerSecond(Timings timings)
+    {
+        long millis = timings.getTotalMillis();
+        return millis == 0 ? 0 : timings.getBytes() * 1000 / millis;
+    }
+
+    private static String quote(String value)
+    {
+        if(null == value)
+        {
+            return "null";
+        }
+
+        StringBuilder result = new StringBuilder("\"");
+        for(char c : value.toCharArray())
+        {
+            switch(c)
+            {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20)
+                    {
+                        result.append(String.format("\\u%04x", (int)c));
+                    }
+                    else
+                    {
+                        result.append(c);
+                    }
+            }
+        }
+        return result.append('"').toString();
+    }
+}
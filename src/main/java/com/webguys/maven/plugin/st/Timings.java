@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The time spent in each phase of rendering a template, along with the amount of output it produced.  A phase can be
+ * measured on several threads at once, as the results of a controller are, in which case the time of each thread is
+ * added.
+ */
+public class Timings
+{
+    public enum Phase
+    {
+        GROUP_LOAD("groupLoad", "group load"),
+        DEPENDENCY_RESOLUTION("dependencyResolution", "dependency resolution"),
+        CONTROLLER_COMPILATION("controllerCompilation", "controller compilation"),
+        CLASS_LOADING("classLoading", "class loading"),
+        CONTROLLER_INVOCATION("controllerInvocation", "controller invocation"),
+        DATA_LOAD("dataLoad", "data load"),
+        ATTRIBUTE_INSTALLATION("attributeInstallation", "attribute installation"),
+        RENDERING("rendering", "rendering"),
+        FILE_WRITE("fileWrite", "file write");
+
+        private final String key;
+        private final String description;
+
+        Phase(String key, String description)
+        {
+            this.key = key;
+            this.description = description;
+        }
+
+        public String getKey()
+        {
+            return this.key;
+        }
+
+        public String getDescription()
+        {
+            return this.description;
+        }
+    }
+
+    private final String name;
+    private final String target;
+    private final Map<Phase, AtomicLong> nanos = new EnumMap<Phase, AtomicLong>(Phase.class);
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong attributes = new AtomicLong();
+    private volatile boolean skipped;
+
+    public Timings(String name, String target)
+    {
+        this.name = name;
+        this.target = target;
+        for(Phase phase : Phase.values())
+        {
+            this.nanos.put(phase, new AtomicLong());
+        }
+    }
+
+    /**
+     * @return the start time of a phase, to pass to {@link #stop(Phase, long)} when it is over.
+     */
+    public long start()
+    {
+        return System.nanoTime();
+    }
+
+    public void stop(Phase phase, long start)
+    {
+        this.nanos.get(phase).addAndGet(System.nanoTime() - start);
+    }
+
+    public void addOutput(long bytes)
+    {
+        this.files.incrementAndGet();
+        this.bytes.addAndGet(bytes);
+    }
+
+    public void addAttributes(int count)
+    {
+        this.attributes.addAndGet(count);
+    }
+
+    public void setSkipped()
+    {
+        this.skipped = true;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public String getTarget()
+    {
+        return this.target;
+    }
+
+    public long getMillis(Phase phase)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.nanos.get(phase).get());
+    }
+
+    public long getTotalMillis()
+    {
+        long total = 0;
+        for(AtomicLong value : this.nanos.values())
+        {
+            total += value.get();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(total);
+    }
+
+    /**
+     * @return the phase that took the longest.
+     */
+    public Phase getSlowestPhase()
+    {
+        Phase slowest = Phase.GROUP_LOAD;
+        for(Phase phase : Phase.values())
+        {
+            if(this.nanos.get(phase).get() > this.nanos.get(slowest).get())
+            {
+                slowest = phase;
+            }
+        }
+        return slowest;
+    }
+
+    public long getFiles()
+    {
+        return this.files.get();
+    }
+
+    public long getBytes()
+    {
+        return this.bytes.get();
+    }
+
+    public long getAttributes()
+    {
+        return this.attributes.get();
+    }
+
+    public boolean isSkipped()
+    {
+        return this.skipped;
+    }
+}
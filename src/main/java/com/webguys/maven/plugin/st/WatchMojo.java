@@ -0,0 +1,383 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the templates, then watches the template directories, the data files and the controller classes and renders
+ * the templates affected by each change again until the build is stopped.  The template groups, the controller class loader and the
+ * results of the controllers are kept between renders, so a change to a template is rendered without starting Maven,
+ * resolving the dependencies or invoking the controllers again.
+ *
+ * @goal watch
+ * @requiresDependencyResolution compile
+ */
+public class WatchMojo extends AbstractStringTemplateMojo
+{
+    /**
+     * The number of milliseconds to wait for more changes after a file changes, so that the files saved together are
+     * rendered once.
+     *
+     * @parameter property="st.watchDelay" default-value="200"
+     */
+    private int watchDelay;
+
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+    private final Set<Path> recursiveRoots = new HashSet<Path>();
+
+    private final Set<Path> controllerSources = new HashSet<Path>();
+
+    private final Set<Path> dataFiles = new HashSet<Path>();
+
+    private WatchService watchService;
+
+    private Path classesDirectory;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        this.open();
+        try
+        {
+            List<Template> templates = this.getTemplates();
+            this.watchService = FileSystems.getDefault().newWatchService();
+            this.registerDirectories(templates);
+
+            this.renderSafely(templates);
+            this.getLog().info("Watching for changes to the templates and controllers.  Stop the build to stop watching.");
+            while(true)
+            {
+                Set<Path> changes = this.awaitChanges();
+                try
+                {
+                    this.renderChanges(changes);
+                }
+                catch(MojoExecutionException e)
+                {
+                    this.getLog().error(e.getMessage());
+                }
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch(ClosedWatchServiceException e)
+        {
+            // the build is shutting down
+        }
+        catch(IOException e)
+        {
+            throw new MojoExecutionException(String.format("Unable to watch the template directories (%s)", e.getMessage()), e);
+        }
+        finally
+        {
+            this.closeWatchService();
+            this.close();
+        }
+    }
+
+    @Override
+    protected boolean isRetainingResults()
+    {
+        return true;
+    }
+
+    private void registerDirectories(List<Template> templates) throws IOException, MojoExecutionException
+    {
+        for(Template template : templates)
+        {
+            this.registerRecursively(this.getWatchedDirectory(template));
+            for(Path dataFile : this.getDataFiles(template))
+            {
+                if(this.dataFiles.add(dataFile) && !this.directories.containsValue(dataFile.getParent()))
+                {
+                    this.register(dataFile.getParent());
+                }
+            }
+
+            Controller controller = template.getController();
+            if(null == controller)
+            {
+                continue;
+            }
+            if(null == this.classesDirectory)
+            {
+                this.classesDirectory = new File(this.project.getBuild().getOutputDirectory()).toPath().toAbsolutePath();
+                this.registerRecursively(this.classesDirectory);
+            }
+
+            // controllers compiled in memory are never written to the output directory, so their sources are watched
+            File sourceFile = controller.findSourceFile(this.project);
+            if("javac".equals(this.controllerCompiler) && null != sourceFile)
+            {
+                Path source = sourceFile.toPath().toAbsolutePath();
+                if(this.controllerSources.add(source) && !this.directories.containsValue(source.getParent()))
+                {
+                    this.register(source.getParent());
+                }
+            }
+        }
+    }
+
+    private void registerRecursively(Path root) throws IOException
+    {
+        if(!Files.isDirectory(root))
+        {
+            this.getLog().warn(String.format("The directory %s does not exist, so changes to it will not be seen.", root));
+            return;
+        }
+        if(this.recursiveRoots.add(root))
+        {
+            this.registerTree(root);
+        }
+    }
+
+    private void registerTree(Path root) throws IOException
+    {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException
+            {
+                if(!directories.containsValue(directory))
+                {
+                    register(directory);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(Path directory) throws IOException
+    {
+        WatchKey key = directory.register(this.watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        this.directories.put(key, directory);
+    }
+
+    /**
+     * Waits for a file to change, then collects the changes that follow it within the watch delay.
+     *
+     * @return the changed files, or null if some changes were lost and everything must be rendered.
+     */
+    private Set<Path> awaitChanges() throws InterruptedException, IOException
+    {
+        Set<Path> changes = new LinkedHashSet<Path>();
+        boolean overflow = false;
+        WatchKey key = this.watchService.take();
+        while(null != key)
+        {
+            Path directory = this.directories.get(key);
+            for(WatchEvent<?> event : key.pollEvents())
+            {
+                if(StandardWatchEventKinds.OVERFLOW == event.kind())
+                {
+                    overflow = true;
+                }
+                else if(null != directory)
+                {
+                    Path path = directory.resolve((Path)event.context());
+                    if(StandardWatchEventKinds.ENTRY_CREATE == event.kind() && Files.isDirectory(path) && this.isUnderRecursiveRoot(path))
+                    {
+                        this.registerTree(path);
+                    }
+                    changes.add(path);
+                }
+            }
+            if(!key.reset())
+            {
+                this.directories.remove(key);
+            }
+            key = this.watchService.poll(this.watchDelay, TimeUnit.MILLISECONDS);
+        }
+
+        return overflow ? null : changes;
+    }
+
+    private boolean isUnderRecursiveRoot(Path path)
+    {
+        for(Path root : this.recursiveRoots)
+        {
+            if(path.startsWith(root))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renders the templates in the directories that changed.  When a controller class changes the controllers are
+     * loaded again, in a new class loader, and every template with a controller is rendered.  The templates are found
+     * again each time, so templates added to a template set are rendered too.
+     */
+    private void renderChanges(Set<Path> changes) throws MojoExecutionException
+    {
+        List<Template> allTemplates = this.getTemplates();
+        boolean controllersChanged = null == changes;
+        Set<Template> affected = new HashSet<Template>();
+        if(null != changes)
+        {
+            for(Path path : changes)
+            {
+                if(this.isControllerFile(path))
+                {
+                    controllersChanged = true;
+                }
+                else if(this.dataFiles.contains(path))
+                {
+                    for(Template template : allTemplates)
+                    {
+                        if(this.getDataFiles(template).contains(path))
+                        {
+                            affected.add(template);
+                        }
+                    }
+                }
+                else if(isTemplateFile(path))
+                {
+                    for(Template template : allTemplates)
+                    {
+                        if(path.startsWith(this.getWatchedDirectory(template)))
+                        {
+                            affected.add(template);
+                        }
+                    }
+                }
+            }
+        }
+
+        if(controllersChanged)
+        {
+            this.getLog().info("The controllers have changed; loading them again.");
+            this.reloadControllers();
+        }
+
+        List<Template> templates = new ArrayList<Template>();
+        for(Template template : allTemplates)
+        {
+            if(null == changes || affected.contains(template) || (controllersChanged && null != template.getController()))
+            {
+                templates.add(template);
+            }
+        }
+        if(templates.isEmpty())
+        {
+            return;
+        }
+
+        this.getLog().info(String.format("Rendering %d templates affected by changes to %s.", templates.size(), null == changes ? "unknown files" : changes));
+        this.renderSafely(templates);
+    }
+
+    private Path getWatchedDirectory(Template template) throws MojoExecutionException
+    {
+        return TemplateGroup.getRoot(this.getTemplateSource(template)).toPath().toAbsolutePath();
+    }
+
+    private List<Path> getDataFiles(Template template)
+    {
+        List<Path> result = new ArrayList<Path>();
+        for(File file : template.getDataFiles(this.project.getBasedir()))
+        {
+            result.add(file.toPath().toAbsolutePath());
+        }
+        return result;
+    }
+
+    private boolean isControllerFile(Path path)
+    {
+        if(null != this.classesDirectory && path.startsWith(this.classesDirectory))
+        {
+            return path.getFileName().toString().endsWith(".class");
+        }
+        return this.controllerSources.contains(path);
+    }
+
+    private static boolean isTemplateFile(Path path)
+    {
+        String name = path.getFileName().toString();
+        return name.endsWith(".st") || name.endsWith(".stg") || Files.isDirectory(path);
+    }
+
+    /**
+     * Renders the templates, logging rather than throwing any failure so that the goal keeps watching for the fix.
+     */
+    private void renderSafely(List<Template> templates)
+    {
+        try
+        {
+            this.render(templates);
+        }
+        catch(MojoExecutionException e)
+        {
+            this.getLog().error(e.getMessage());
+        }
+    }
+
+    private void closeWatchService()
+    {
+        if(null == this.watchService)
+        {
+            return;
+        }
+
+        try
+        {
+            this.watchService.close();
+        }
+        catch(IOException e)
+        {
+            this.getLog().warn(String.format("Unable to stop watching the template directories (%s)", e.getMessage()));
+        }
+    }
+}
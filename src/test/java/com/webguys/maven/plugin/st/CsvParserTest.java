@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvParserTest
+{
+    @Test
+    public void readsRecordsByColumn() throws IOException
+    {
+        List<Map<String, String>> records = this.read("name,colour\nKeith,black\nLance,red\n");
+        assertEquals(2, records.size());
+        assertEquals(Arrays.asList("name", "colour"), new ArrayList<String>(records.get(0).keySet()));
+        assertEquals("Keith", records.get(0).get("name"));
+        assertEquals("red", records.get(1).get("colour"));
+    }
+
+    @Test
+    public void readsQuotedFields() throws IOException
+    {
+        List<Map<String, String>> records = this.read("name,quote\r\nKeith,\"Form feet and legs, \"\"now\"\"\r\nand arms\"\r\n");
+        assertEquals(1, records.size());
+        assertEquals("Form feet and legs, \"now\"\r\nand arms", records.get(0).get("quote"));
+    }
+
+    @Test
+    public void skipsBlankLinesAndReadsTheLastRecordWithoutALineBreak() throws IOException
+    {
+        List<Map<String, String>> records = this.read("\nname\n\nKeith\n\nLance");
+        assertEquals(2, records.size());
+        assertEquals("Lance", records.get(1).get("name"));
+    }
+
+    @Test
+    public void fillsMissingFieldsWithEmptyValues() throws IOException
+    {
+        Map<String, String> record = this.read("name,colour,weapon\nPidge,green\n").get(0);
+        assertEquals("green", record.get("colour"));
+        assertEquals("", record.get("weapon"));
+    }
+
+    @Test
+    public void usesTheSeparator() throws IOException
+    {
+        CsvParser parser = new CsvParser(new StringReader("name;colour\nHunk;yellow,ish\n"), "test.csv", ';');
+        assertEquals("yellow,ish", parser.nextRecord().get("colour"));
+        assertNull(parser.nextRecord());
+    }
+
+    @Test
+    public void readsNoRecordsFromAnEmptyInput() throws IOException
+    {
+        assertTrue(this.read("").isEmpty());
+        assertTrue(this.read("name,colour\n").isEmpty());
+    }
+
+    @Test
+    public void rejectsRecordsWithTooManyFields() throws IOException
+    {
+        try
+        {
+            this.read("name\nKeith\nLance,red\n");
+            fail();
+        }
+        catch(IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("test.csv, record 3:"));
+        }
+    }
+
+    @Test
+    public void rejectsUnterminatedQuotes() throws IOException
+    {
+        try
+        {
+            this.read("name\n\"Keith\n");
+            fail();
+        }
+        catch(IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains("unterminated quoted field"));
+        }
+    }
+
+    private List<Map<String, String>> read(String csv) throws IOException
+    {
+        CsvParser parser = new CsvParser(new StringReader(csv), "test.csv", ',');
+        List<Map<String, String>> records = new ArrayList<Map<String, String>>();
+        for(Map<String, String> record = parser.nextRecord(); null != record; record = parser.nextRecord())
+        {
+            records.add(record);
+        }
+        return records;
+    }
+}
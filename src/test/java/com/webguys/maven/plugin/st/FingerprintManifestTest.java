@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintManifestTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private File target;
+
+    @Before
+    public void setUp()
+    {
+        this.file = new File(this.folder.getRoot(), "string-template/fingerprints.properties");
+        this.target = new File(this.folder.getRoot(), "Pride${index}.java");
+    }
+
+    @Test
+    public void keepsFingerprintsBetweenBuilds() throws IOException
+    {
+        FingerprintManifest manifest = new FingerprintManifest(this.file);
+        assertNull(manifest.get(this.target));
+        manifest.put(this.target, "abc");
+        manifest.save();
+
+        assertEquals("abc", new FingerprintManifest(this.file).get(this.target));
+    }
+
+    @Test
+    public void findsTargetsByAbsolutePath() throws IOException
+    {
+        FingerprintManifest manifest = new FingerprintManifest(this.file);
+        File relative = new File("target/Voltron.java");
+        manifest.put(relative, "abc");
+        assertEquals("abc", manifest.get(relative.getAbsoluteFile()));
+    }
+
+    @Test
+    public void doesNotWriteAnUnmodifiedManifest() throws IOException
+    {
+        FingerprintManifest manifest = new FingerprintManifest(this.file);
+        manifest.remove(this.target);
+        manifest.save();
+        assertFalse(this.file.exists());
+    }
+
+    @Test
+    public void forgetsRemovedFingerprints() throws IOException
+    {
+        FingerprintManifest manifest = new FingerprintManifest(this.file);
+        manifest.put(this.target, "abc");
+        manifest.save();
+
+        manifest = new FingerprintManifest(this.file);
+        manifest.remove(this.target);
+        manifest.save();
+        assertNull(new FingerprintManifest(this.file).get(this.target));
+    }
+
+    @Test
+    public void recordsTheOutputsOfAPattern() throws IOException
+    {
+        File first = this.output("Pride0.java");
+        File second = this.output("Pride1.java");
+        FingerprintManifest manifest = new FingerprintManifest(this.file);
+        assertNull(manifest.getOutputs(this.target));
+        assertTrue(manifest.put(this.target, "abc", Arrays.asList(first, second)).isEmpty());
+        manifest.save();
+
+        manifest = new FingerprintManifest(this.file);
+        assertEquals("abc", manifest.get(this.target));
+        assertEquals(Arrays.asList(first, second), manifest.getOutputs(this.target));
+    }
+
+    @Test
+    public void returnsTheOutputsThatArePruned() throws IOException
+    {
+        File first = this.output("Pride0.java");
+        File second = this.output("Pride1.java");
+        File third = this.output("Pride2.java");
+        FingerprintManifest manifest = new FingerprintManifest(this.file);
+        manifest.put(this.target, "abc", Arrays.asList(first, second, third));
+
+        assertEquals(Arrays.asList(second, third), manifest.put(this.target, "def", Collections.singletonList(first)));
+        assertEquals(Collections.singletonList(first), manifest.getOutputs(this.target));
+        assertTrue(manifest.put(this.target, "ghi", Collections.<File>emptyList()).contains(first));
+    }
+
+    @Test
+    public void keepsTheOutputsOfARemovedPatternSoTheyCanStillBePruned() throws IOException
+    {
+        File first = this.output("Pride0.java");
+        File second = this.output("Pride1.java");
+        FingerprintManifest manifest = new FingerprintManifest(this.file);
+        manifest.put(this.target, "abc", Arrays.asList(first, second));
+        manifest.save();
+
+        manifest = new FingerprintManifest(this.file);
+        manifest.remove(this.target);
+        manifest.save();
+
+        manifest = new FingerprintManifest(this.file);
+        assertNull(manifest.get(this.target));
+        assertEquals(Collections.singletonList(second), manifest.put(this.target, "def", Collections.singletonList(first)));
+    }
+
+    private File output(String name)
+    {
+        return new File(this.folder.getRoot(), name).getAbsoluteFile();
+    }
+}
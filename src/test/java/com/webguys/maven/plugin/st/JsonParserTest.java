@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonParserTest
+{
+    @Test
+    public void readsObjectsInOrder() throws IOException
+    {
+        Map<?, ?> value = (Map<?, ?>)this.read("{\"name\": \"Keith\", \"colour\": \"black\", \"lion\": true, \"weapon\": null}");
+        assertEquals(Arrays.asList("name", "colour", "lion", "weapon"), new ArrayList<Object>(value.keySet()));
+        assertEquals("Keith", value.get("name"));
+        assertEquals(Boolean.TRUE, value.get("lion"));
+        assertNull(value.get("weapon"));
+    }
+
+    @Test
+    public void readsNumbersAsWritten() throws IOException
+    {
+        List<?> value = (List<?>)this.read("[5, -12, 123456789012345678901234567890, 1.50, 2e3]");
+        assertEquals(5L, value.get(0));
+        assertEquals(-12L, value.get(1));
+        assertEquals(new BigInteger("123456789012345678901234567890"), value.get(2));
+        assertEquals(new BigDecimal("1.50"), value.get(3));
+        assertEquals(new BigDecimal("2e3"), value.get(4));
+    }
+
+    @Test
+    public void readsEscapes() throws IOException
+    {
+        assertEquals("a\"b\\c\nd\u00e9", this.read("\"a\\\"b\\\\c\\nd\\u00e9\""));
+    }
+
+    @Test
+    public void readsNestedArrays() throws IOException
+    {
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L), new ArrayList<Object>()), this.read("[[1, 2], []]"));
+    }
+
+    @Test
+    public void readsArrayElementsOneAtATime() throws IOException
+    {
+        JsonParser parser = new JsonParser(new StringReader(" [ {\"id\": 1} , {\"id\": 2} ] "), "test.json");
+        assertTrue(parser.beginArray());
+        List<Object> elements = new ArrayList<Object>();
+        while(parser.hasNextElement())
+        {
+            elements.add(parser.nextElement());
+        }
+        parser.end();
+        assertEquals(2, elements.size());
+        assertEquals(2L, ((Map<?, ?>)elements.get(1)).get("id"));
+    }
+
+    @Test
+    public void readsAnEmptyArrayOneElementAtATime() throws IOException
+    {
+        JsonParser parser = new JsonParser(new StringReader("[]"), "test.json");
+        assertTrue(parser.beginArray());
+        assertFalse(parser.hasNextElement());
+        parser.end();
+    }
+
+    @Test
+    public void doesNotBeginAnArrayForOtherValues() throws IOException
+    {
+        JsonParser parser = new JsonParser(new StringReader("{}"), "test.json");
+        assertFalse(parser.beginArray());
+        assertTrue(parser.readValue() instanceof Map);
+    }
+
+    @Test
+    public void rejectsMissingCommas() throws IOException
+    {
+        this.assertRejected("[1 2]");
+        this.assertRejected("{\"a\": 1 \"b\": 2}");
+        this.assertElementsRejected("[1 2]");
+    }
+
+    @Test
+    public void rejectsMisplacedCommas() throws IOException
+    {
+        this.assertRejected("[,1]");
+        this.assertRejected("[1,]");
+        this.assertRejected("{\"a\": 1,}");
+        this.assertElementsRejected("[,1]");
+        this.assertElementsRejected("[1,]");
+    }
+
+    @Test
+    public void rejectsMalformedValues() throws IOException
+    {
+        this.assertRejected("[tru]");
+        this.assertRejected("\"unterminated");
+        this.assertRejected("{1: 2}");
+        this.assertRejected("[1] 2");
+        this.assertRejected("");
+    }
+
+    @Test
+    public void namesTheSourceAndLineOfAnError() throws IOException
+    {
+        try
+        {
+            this.read("[\n1,\n2\n3]");
+            fail();
+        }
+        catch(IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains("test.json, line 4"));
+        }
+    }
+
+    private Object read(String json) throws IOException
+    {
+        JsonParser parser = new JsonParser(new StringReader(json), "test.json");
+        Object value = parser.readValue();
+        parser.end();
+        return value;
+    }
+
+    private void assertRejected(String json)
+    {
+        try
+        {
+            this.read(json);
+            fail(String.format("%s was accepted", json));
+        }
+        catch(IOException e)
+        {
+            // expected
+        }
+    }
+
+    private void assertElementsRejected(String json)
+    {
+        try
+        {
+            JsonParser parser = new JsonParser(new StringReader(json), "test.json");
+            assertTrue(parser.beginArray());
+            while(parser.hasNextElement())
+            {
+                parser.nextElement();
+            }
+            parser.end();
+            fail(String.format("the elements of %s were accepted", json));
+        }
+        catch(IOException e)
+        {
+            // expected
+        }
+    }
+}
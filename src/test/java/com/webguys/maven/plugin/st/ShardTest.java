@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2011 Kevin Birch <kmb@pobox.com>. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.webguys.maven.plugin.st;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardTest
+{
+    private final Shard shard = new Shard("lions", 2);
+
+    @Test
+    public void splitsAListIntoChunks() throws MojoExecutionException
+    {
+        List<String> lions = Arrays.asList("Keith", "Lance", "Pidge", "Hunk", "Allura");
+        assertEquals(Arrays.asList(Arrays.asList("Keith", "Lance"), Arrays.asList("Pidge", "Hunk"), Arrays.asList("Allura")),
+            this.chunks(this.shard.split(lions)));
+    }
+
+    @Test
+    public void copiesTheChunksOfAList() throws MojoExecutionException
+    {
+        List<String> lions = new ArrayList<String>(Arrays.asList("Keith", "Lance"));
+        List<?> chunk = this.shard.split(lions).next();
+        lions.set(0, "Shiro");
+        assertEquals("Keith", chunk.get(0));
+    }
+
+    @Test
+    public void splitsAnIterableAsItIsRead() throws MojoExecutionException
+    {
+        final Iterator<Integer> values = Arrays.asList(1, 2, 3, 4).iterator();
+        Iterator<List<?>> chunks = this.shard.split(new Iterable<Integer>()
+        {
+            public Iterator<Integer> iterator()
+            {
+                return values;
+            }
+        });
+        assertEquals(Arrays.asList(1, 2), chunks.next());
+        assertTrue(values.hasNext());
+        assertEquals(Arrays.asList(3, 4), chunks.next());
+        assertFalse(chunks.hasNext());
+    }
+
+    @Test
+    public void splitsOtherCollectionsArraysStreamsAndSuppliers() throws MojoExecutionException
+    {
+        List<List<Integer>> expected = Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3));
+        assertEquals(expected, this.chunks(this.shard.split(new LinkedHashSet<Integer>(Arrays.asList(1, 2, 3)))));
+        assertEquals(expected, this.chunks(this.shard.split(new Integer[]{1, 2, 3})));
+        assertEquals(expected, this.chunks(this.shard.split(Arrays.asList(1, 2, 3).iterator())));
+        assertEquals(expected, this.chunks(this.shard.split(IntStream.rangeClosed(1, 3).boxed())));
+        assertEquals(expected, this.chunks(this.shard.split(new Supplier<List<Integer>>()
+        {
+            public List<Integer> get()
+            {
+                return Arrays.asList(1, 2, 3);
+            }
+        })));
+    }
+
+    @Test
+    public void splitsAnEmptyCollectionIntoNoChunks() throws MojoExecutionException
+    {
+        assertFalse(this.shard.split(new ArrayList<Object>()).hasNext());
+        assertFalse(this.shard.split(new ArrayList<Object>().iterator()).hasNext());
+    }
+
+    @Test
+    public void endsAfterTheLastChunk() throws MojoExecutionException
+    {
+        for(Object collection : Arrays.<Object>asList(Arrays.asList(1, 2), Arrays.asList(1, 2).iterator()))
+        {
+            Iterator<List<?>> chunks = this.shard.split(collection);
+            chunks.next();
+            try
+            {
+                chunks.next();
+                fail();
+            }
+            catch(NoSuchElementException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void rejectsValuesThatAreNotCollections()
+    {
+        for(Object value : Arrays.asList("Voltron", null))
+        {
+            try
+            {
+                this.shard.split(value);
+                fail();
+            }
+            catch(MojoExecutionException e)
+            {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("The attribute lions is "));
+            }
+        }
+    }
+
+    private List<List<?>> chunks(Iterator<List<?>> chunks)
+    {
+        List<List<?>> result = new ArrayList<List<?>>();
+        while(chunks.hasNext())
+        {
+            result.add(chunks.next());
+        }
+        return result;
+    }
+}